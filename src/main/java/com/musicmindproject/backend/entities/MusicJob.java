@@ -0,0 +1,148 @@
+package com.musicmindproject.backend.entities;
+
+import com.musicmindproject.backend.entities.enums.JobStage;
+
+import javax.persistence.*;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+@Entity
+@Table(name = "MUSIC_JOB")
+@NamedQueries({
+    @NamedQuery(name = "MusicJob.unfinished", query = "SELECT j FROM MusicJob j WHERE j.stage <> com.musicmindproject.backend.entities.enums.JobStage.DONE AND j.stage <> com.musicmindproject.backend.entities.enums.JobStage.FAILED ORDER BY j.dateOfCreation"),
+    @NamedQuery(name = "MusicJob.removeFinished", query = "DELETE FROM MusicJob j WHERE (j.stage = com.musicmindproject.backend.entities.enums.JobStage.DONE OR j.stage = com.musicmindproject.backend.entities.enums.JobStage.FAILED) AND j.lastUpdate < :before")
+})
+public class MusicJob {
+    @Id
+    @Column(name = "JOB_ID")
+    private String jobId;
+    private String userId;
+    private String userName;
+
+    /**
+     * Comma separated answer values, in the order of the questions
+     */
+    @Lob
+    private String answers;
+
+    /**
+     * Comma separated personality values once the job passed the evaluation
+     */
+    private String personality;
+
+    @Column(name = "FACTOR_VERSION")
+    private String factorVersion;
+
+    @Column(name = "PATH")
+    private String filename;
+
+    @Enumerated(EnumType.STRING)
+    private JobStage stage;
+    private int attempts;
+    private String error;
+
+    @Column(name = "DATE_OF_CREATION")
+    private Timestamp dateOfCreation;
+    @Column(name = "LAST_UPDATE")
+    private Timestamp lastUpdate;
+
+    public MusicJob() {
+    }
+
+    public MusicJob(String jobId, String userId, String userName, String answers) {
+        this.jobId = jobId;
+        this.userId = userId;
+        this.userName = userName;
+        this.answers = answers;
+        this.stage = JobStage.QUEUED;
+        this.attempts = 0;
+        this.dateOfCreation = Timestamp.valueOf(LocalDateTime.now());
+        this.lastUpdate = dateOfCreation;
+    }
+
+    /**
+     * Stores the result of the evaluation, the job continues with creating the music
+     * @param values the evaluated values of the users personality
+     * @param factorVersion version of the factors the values were evaluated with
+     */
+    public void evaluated(double[] values, String factorVersion) {
+        this.personality = Arrays.stream(values).mapToObj(Double::toString).collect(Collectors.joining(","));
+        this.factorVersion = factorVersion;
+        setStage(JobStage.CREATING_MUSIC);
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public String getAnswers() {
+        return answers;
+    }
+
+    public String getPersonality() {
+        return personality;
+    }
+
+    public void setPersonality(String personality) {
+        this.personality = personality;
+    }
+
+    public String getFactorVersion() {
+        return factorVersion;
+    }
+
+    public void setFactorVersion(String factorVersion) {
+        this.factorVersion = factorVersion;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public JobStage getStage() {
+        return stage;
+    }
+
+    public void setStage(JobStage stage) {
+        this.stage = stage;
+        this.lastUpdate = Timestamp.valueOf(LocalDateTime.now());
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Timestamp getDateOfCreation() {
+        return dateOfCreation;
+    }
+
+    public Timestamp getLastUpdate() {
+        return lastUpdate;
+    }
+}
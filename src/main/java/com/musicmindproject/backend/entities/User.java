@@ -9,9 +9,15 @@ import java.time.LocalDateTime;
 @Table(name = "USER")
 @NamedQueries({
     @NamedQuery(name = "User.getAll", query = "SELECT u FROM User u"),
-    @NamedQuery(name = "User.hottest", query = "SELECT u FROM User u ORDER BY u.plays DESC"),
-    @NamedQuery(name = "User.newest", query = "SELECT u FROM User u ORDER BY u.dateOfCreation DESC"),
-    @NamedQuery(name = "User.getByName", query = "SELECT u FROM User u WHERE u.userName LIKE :uName")
+    @NamedQuery(name = "User.hottest", query = "SELECT u FROM User u ORDER BY u.plays DESC, u.userId"),
+    @NamedQuery(name = "User.newest", query = "SELECT u FROM User u ORDER BY u.dateOfCreation DESC, u.userId"),
+    @NamedQuery(name = "User.hottestAfter", query = "SELECT u FROM User u WHERE u.plays < :plays OR (u.plays = :plays AND u.userId > :userId) ORDER BY u.plays DESC, u.userId"),
+    @NamedQuery(name = "User.newestAfter", query = "SELECT u FROM User u WHERE u.dateOfCreation < :created OR (u.dateOfCreation = :created AND u.userId > :userId) ORDER BY u.dateOfCreation DESC, u.userId"),
+    @NamedQuery(name = "User.getByName", query = "SELECT u FROM User u WHERE u.userName LIKE :uName"),
+    @NamedQuery(name = "User.getByFilename", query = "SELECT u FROM User u WHERE u.filename = :filename"),
+    @NamedQuery(name = "User.getByIds", query = "SELECT u FROM User u WHERE u.userId IN :ids"),
+    @NamedQuery(name = "User.activity", query = "SELECT u.userId, u.plays, u.shares, u.dateOfCreation FROM User u WHERE u.plays > 0 OR u.shares > 0"),
+    @NamedQuery(name = "User.names", query = "SELECT u.userId, u.userName, u.filename FROM User u")
 })
 
 public class User implements Serializable {
@@ -26,9 +32,18 @@ public class User implements Serializable {
     private double extraversion;
     private double agreeableness;
     private double neuroticism;
+    /**
+     * Only changed with UPDATE statements (UserManager.addCounts(), resetCounts()), merging a user doesn't overwrite
+     * counts that were added in the meantime
+     */
+    @Column(updatable = false)
     private int shares;
+    @Column(updatable = false)
     private int plays;
 
+    @Column(name = "FACTOR_VERSION")
+    private String factorVersion;
+
     @Column(name = "DATE_OF_CREATION")
     private Timestamp dateOfCreation;
 
@@ -49,6 +64,17 @@ public class User implements Serializable {
         this.dateOfCreation = Timestamp.valueOf(LocalDateTime.now());
     }
 
+    /**
+     * Detached copy of an user
+     */
+    public User(User user) {
+        this(user.userId, user.userName, user.filename, user.openness, user.conscientiousness, user.extraversion, user.agreeableness, user.neuroticism);
+        this.shares = user.shares;
+        this.plays = user.plays;
+        this.factorVersion = user.factorVersion;
+        this.dateOfCreation = user.dateOfCreation;
+    }
+
     public String getUserId() {
         return userId;
     }
@@ -132,4 +158,12 @@ public class User implements Serializable {
     public int getShares() {
         return shares;
     }
+
+    public String getFactorVersion() {
+        return factorVersion;
+    }
+
+    public void setFactorVersion(String factorVersion) {
+        this.factorVersion = factorVersion;
+    }
 }
@@ -0,0 +1,30 @@
+package com.musicmindproject.backend.entities.enums;
+
+/**
+ * Stages a music-job passes through, in order of execution
+ */
+public enum JobStage {
+    QUEUED(0),
+    CREATING_MUSIC(20),
+    STORING_USER(70),
+    GENERATING_IMAGE(85),
+    DONE(100),
+    FAILED(100);
+
+    private final int progress;
+
+    JobStage(int progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * @return rough percentage of the work that is finished when a job reaches this stage
+     */
+    public int getProgress() {
+        return progress;
+    }
+
+    public boolean isFinished() {
+        return this == DONE || this == FAILED;
+    }
+}
@@ -0,0 +1,138 @@
+package com.musicmindproject.backend.logic;
+
+import com.musicmindproject.backend.entities.MusicJob;
+import com.musicmindproject.backend.entities.User;
+import com.musicmindproject.backend.entities.enums.JobStage;
+import com.musicmindproject.backend.logic.counters.CounterBuffer;
+import com.musicmindproject.backend.logic.database.MusicJobManager;
+import com.musicmindproject.backend.logic.database.UserManager;
+import com.musicmindproject.backend.logic.video.VideoCache;
+import com.musicmindproject.backend.logic.video.VideoPrerenderer;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Executes the stages of a music-job. Every call of advance() runs exactly one stage in its own transaction,
+ * so the progress of a job survives a restart and the job can continue with the stage it was interrupted in.
+ */
+@Stateless
+public class MusicJobProcessor {
+    private static final int MAX_ATTEMPTS = Settings.getInt("jobs.maxAttempts", 3);
+
+    @Inject
+    private MusicJobManager jobManager;
+    @Inject
+    private UserManager userManager;
+    @Inject
+    private PersonalityEvaluator evaluator;
+    @Inject
+    private PersonalityMusicGenerator musicGenerator;
+    @Inject
+    private PersonalityImageGenerator personalityImageGenerator;
+    @Inject
+    private VideoCache videoCache;
+    @Inject
+    private CounterBuffer counterBuffer;
+    @Inject
+    private VideoPrerenderer videoPrerenderer;
+
+    /**
+     * @param jobId ID of the job
+     * @return the stage the job is in after the current stage was executed
+     */
+    public JobStage advance(String jobId) {
+        MusicJob job = jobManager.retrieve(jobId);
+        if (job == null)
+            return JobStage.FAILED;
+
+        switch (job.getStage()) {
+            case QUEUED:
+                PersonalityEvaluation evaluation = evaluator.evaluate(parse(job.getAnswers()));
+                job.evaluated(evaluation.getValues(), evaluation.getFactorVersion());
+                break;
+            case CREATING_MUSIC:
+                File musicFile = musicGenerator.createMusicFile(job.getUserName(), job.getUserId(), parse(job.getPersonality()));
+                job.setFilename(musicFile.getName().substring(0, musicFile.getName().length() - 4));
+                job.setStage(JobStage.STORING_USER);
+                break;
+            case STORING_USER:
+                storeUser(job.getUserId(), job.getUserName(), job.getFilename(), parse(job.getPersonality()), job.getFactorVersion());
+                job.setStage(JobStage.GENERATING_IMAGE);
+                break;
+            case GENERATING_IMAGE:
+                personalityImageGenerator.generatePersonalityImage(userManager.retrieve(job.getUserId()));
+                job.setStage(JobStage.DONE);
+                String filename = job.getFilename();
+                // the prerenderer reads the user and the image, it starts once the stage is committed
+                jobManager.afterCommit(() -> {
+                    // the video of a previous answer has the same name, it has to be encoded again
+                    videoCache.invalidate(filename);
+                    videoPrerenderer.offer(filename);
+                });
+                break;
+            default:
+                return job.getStage();
+        }
+        return jobManager.store(job).getStage();
+    }
+
+    /**
+     * Records a failed attempt of the current stage
+     * @param jobId ID of the job
+     * @param error description of the error
+     * @return true if the stage should be retried, false if the job was given up
+     */
+    public boolean fail(String jobId, String error) {
+        MusicJob job = jobManager.retrieve(jobId);
+        if (job == null)
+            return false;
+
+        job.setAttempts(job.getAttempts() + 1);
+        job.setError(error);
+        if (job.getAttempts() >= MAX_ATTEMPTS)
+            job.setStage(JobStage.FAILED);
+        return !jobManager.store(job).getStage().isFinished();
+    }
+
+    /**
+     *
+     * @param userName name of the user
+     * @param userID id of the user (if already in database)
+     * @param values the evaluated values of the users personality
+     * @param fileName the users music-file
+     * @param factorVersion version of the factors the values were evaluated with
+     * @return the user which was stored in the database
+     *
+     * Stores an user in the database along with the path to his music-file
+     */
+    private User storeUser(String userID, String userName, String fileName, double[] values, String factorVersion) {
+        User user = userManager.retrieve(userID);
+        if (user == null)
+            user = new User(userID, userName, fileName, values[4], values[1], values[3], values[2], values[0]);
+        else {
+            user.setAgreeableness(values[2]);
+            user.setConscientiousness(values[1]);
+            user.setExtraversion(values[3]);
+            user.setNeuroticism(values[0]);
+            user.setOpenness(values[4]);
+            user.setUserName(userName);
+            // the counts of the old track are not credited to the new one, the buffered ones are dropped first
+            counterBuffer.reset(userID);
+            userManager.resetCounts(userID);
+            // the counters are not merged, these only go to the feeds
+            user.setPlays(0);
+            user.setShares(0);
+            user.setFilename(fileName);
+        }
+        user.setFactorVersion(factorVersion);
+
+        return userManager.store(user);
+    }
+
+    private static double[] parse(String values) {
+        return Arrays.stream(values.split(",")).mapToDouble(Double::parseDouble).toArray();
+    }
+}
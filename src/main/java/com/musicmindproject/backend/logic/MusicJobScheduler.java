@@ -0,0 +1,138 @@
+package com.musicmindproject.backend.logic;
+
+import com.musicmindproject.backend.entities.MusicJob;
+import com.musicmindproject.backend.entities.enums.JobStage;
+import com.musicmindproject.backend.logic.database.MusicJobManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.*;
+import javax.inject.Inject;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs music-jobs on a bounded pool of worker threads, so personality submissions don't block the HTTP workers.
+ * Jobs are stored in the database before they are queued; unfinished jobs (e.g. after a restart or when the
+ * queue was full) are picked up again by a periodic sweep.
+ * A failed stage is retried after musicmind.jobs.retryDelaySeconds, the delay doubles with every failure.
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MusicJobScheduler {
+    private static final int WORKERS = Settings.getInt("jobs.workers", 4);
+    private static final int QUEUE_CAPACITY = Settings.getInt("jobs.queueCapacity", 100);
+    private static final int FINISHED_JOB_RETENTION_HOURS = Settings.getInt("jobs.retentionHours", 24);
+    private static final long RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(Settings.getLong("jobs.retryDelaySeconds", 5));
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    @Inject
+    private MusicJobManager jobManager;
+    @Inject
+    private MusicJobProcessor processor;
+
+    private final Set<String> scheduledJobs = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor workers;
+    private ScheduledExecutorService retries;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = new ThreadPoolExecutor(WORKERS, WORKERS, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+                r -> new Thread(r, "music-job-" + threadNumber.incrementAndGet()));
+        retries = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "music-job-retries"));
+        resumeUnfinishedJobs();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retries.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queues an already stored job for execution. If the queue is full the job stays in the database
+     * and is picked up by the next sweep.
+     * @param jobId ID of the job
+     */
+    public void schedule(String jobId) {
+        if (!scheduledJobs.add(jobId))
+            return;
+        try {
+            workers.execute(() -> run(jobId, 0));
+        } catch (RejectedExecutionException e) {
+            scheduledJobs.remove(jobId);
+            System.err.println("Music-job queue is full, job " + jobId + " will be picked up later");
+        }
+    }
+
+    /**
+     * @return number of jobs waiting for a free worker
+     */
+    public int getQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * Requeues every unfinished job and removes old finished ones
+     */
+    @Schedule(minute = "*", hour = "*", persistent = false)
+    public void resumeUnfinishedJobs() {
+        try {
+            for (MusicJob job : jobManager.retrieveMany(0, QUEUE_CAPACITY, "unfinished"))
+                schedule(job.getJobId());
+            jobManager.removeFinished(Timestamp.valueOf(LocalDateTime.now().minusHours(FINISHED_JOB_RETENTION_HOURS)));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param failures number of failed attempts of this job since it was scheduled
+     */
+    private void run(String jobId, int failures) {
+        boolean retrying = false;
+        try {
+            JobStage stage = JobStage.QUEUED;
+            while (!stage.isFinished() && !Thread.currentThread().isInterrupted()) {
+                try {
+                    stage = processor.advance(jobId);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    if (processor.fail(jobId, String.valueOf(e.getMessage())))
+                        retrying = retryLater(jobId, failures + 1);
+                    break;
+                }
+            }
+        } finally {
+            if (!retrying)
+                scheduledJobs.remove(jobId);
+        }
+    }
+
+    /**
+     * Runs the job again after a delay that doubles with every failure, the job stays scheduled meanwhile
+     * (so the sweep doesn't retry it earlier)
+     * @return false if the retry could not be scheduled
+     */
+    private boolean retryLater(String jobId, int failures) {
+        long delay = Math.min(MAX_RETRY_DELAY_MILLIS, RETRY_DELAY_MILLIS << Math.min(failures - 1, 16));
+        try {
+            retries.schedule(() -> {
+                try {
+                    workers.execute(() -> run(jobId, failures));
+                } catch (RejectedExecutionException e) {
+                    scheduledJobs.remove(jobId); // picked up by the next sweep
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+}
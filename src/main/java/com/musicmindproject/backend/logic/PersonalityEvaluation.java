@@ -0,0 +1,25 @@
+package com.musicmindproject.backend.logic;
+
+/**
+ * Result of an evaluation together with the version of the factors it was computed with
+ */
+public class PersonalityEvaluation {
+    private final double[] values;
+    private final String factorVersion;
+
+    public PersonalityEvaluation(double[] values, String factorVersion) {
+        this.values = values;
+        this.factorVersion = factorVersion;
+    }
+
+    /**
+     * @return the calculated personality values (see PersonalityEvaluator.getOutputs())
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    public String getFactorVersion() {
+        return factorVersion;
+    }
+}
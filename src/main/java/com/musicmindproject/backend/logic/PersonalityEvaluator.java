@@ -1,92 +1,59 @@
 package com.musicmindproject.backend.logic;
 
-import com.musicmindproject.backend.logic.database.QuestionManager;
+import com.musicmindproject.backend.logic.database.FactorSnapshot;
+import com.musicmindproject.backend.logic.database.QuestionCatalogCache;
 
-import javax.annotation.PostConstruct;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 
+/**
+ * Evaluates answers with the factor snapshot shared by all instances (see QuestionCatalogCache and ScoringKernel)
+ */
 @Stateless
 public class PersonalityEvaluator {
-    @Inject
-    private QuestionManager questionManager;
-    private double[][] factors;
+    /**
+     * Kernel of the current factor snapshot, shared by all instances
+     */
+    private static volatile ScoringKernel kernel;
 
-    @PostConstruct
-    private void init(){
-        factors = questionManager.getFactors();
-    }
+    @Inject
+    private QuestionCatalogCache catalogCache;
 
     /**
      * @param inputs double array of all the answer values received by the PersonalizerEndpoint
      * @return the calculated personality values
      */
     public double[] getOutputs(double[] inputs){
-        double[] outputs = new double[5];
-        outputs[0] = computeResults(inputs, 0);
-        outputs[3] = computeResults(inputs, 1);
-        outputs[4] = computeResults(inputs, 2);
-        outputs[2] = computeResults(inputs, 3);
-        outputs[1] = computeResults(inputs, 4);
-        return outputs;
+        return getKernel().score(inputs);
     }
 
     /**
-     * @param inputs double array of all the answer values received by the PersonalizerEndpoint
-     * @param type personality type that should be calculated
-     * @return calculated value for the requested personality type
+     * @param batch answer values of many users, every row is scored like getOutputs(double[])
+     * @return the calculated personality values for every row of the batch
      */
-    private double computeResults(double[] inputs, int type){
-
-        if(inputs == null)
-            System.err.println("INPUTS IS NULL");
-        if(factors == null)
-            System.err.println("FACTORS IS NULL");
-
-        if(inputs.length == factors[type].length){
-            double productSum = 0;
-            //This for-loop goes through every input and calculates its productsum using the predetermined factors
-            //productsum is the sum of all products of inputs and the correlating factors
-            for(int i = 0; i < inputs.length; i++){
-                if(factors[type][i] > 0){
-                    productSum += inputs[i]*factors[type][i];
-                }
-                //since some of the factors are negative the inputs have to be swapped
-                else if(factors[type][i] < 0){
-                    double factor = factors[type][i]*(-1);
-                    double input = inputs[i] == 4 ? 0 : inputs[i] == 3 ? 1 : inputs[i] == 1 ? 3 : inputs[i] == 0 ? 4 : 0;
-                    productSum += input*factor;
-                }
-
-            }
-            double factorSum = 0;
-            //calculates the normalized sum of all the factors
-            for(int i = 0; i < factors[type].length; i++){
-                if(factors[type][i] < 0){
-                    factorSum += factors[type][i]*(-1);
-                }
-                else
-                    factorSum += factors[type][i];
-            }
-
-            double result = productSum/factorSum;
-
-            if(result < 0)
-                result = 0;
-            else if(result > 4)
-                result = 4;
+    public double[][] getOutputs(double[][] batch){
+        return getKernel().score(batch);
+    }
 
-            return mapResult(result);
-        }
-        return -1;
+    /**
+     * @param inputs double array of all the answer values received by the PersonalizerEndpoint
+     * @return the calculated personality values and the version of the factors used
+     */
+    public PersonalityEvaluation evaluate(double[] inputs){
+        ScoringKernel kernel = getKernel();
+        return new PersonalityEvaluation(kernel.score(inputs), kernel.getVersion());
     }
 
     /**
-     * @param value result value that should be mapped
-     * @return the value mapped from 0|4 to 0|100
+     * @return the kernel compiled from the current factor snapshot
      */
-    private double mapResult(double value)
-    {
-        return (value - (double) 0) / ((double) 4 - (double) 0) * ((double) 100 - (double) 0) + (double) 0;
+    public ScoringKernel getKernel(){
+        FactorSnapshot factors = catalogCache.getFactorSnapshot();
+        ScoringKernel current = kernel;
+        if(current == null || !current.getVersion().equals(factors.getVersion())){
+            current = ScoringKernel.compile(factors);
+            kernel = current;
+        }
+        return current;
     }
 }
@@ -1,98 +1,83 @@
 package com.musicmindproject.backend.logic;
 
 import com.musicmindproject.backend.entities.User;
+import com.musicmindproject.backend.logic.database.UserManager;
+import com.musicmindproject.backend.logic.images.PersonalityImageRenderer;
+import com.musicmindproject.backend.logic.images.PersonalitySvgRenderer;
 
 import javax.ejb.Stateless;
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
+import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
 
-
+/**
+ * Generates the image visualising the personality of an user in /mnt/personality_images.
+ * With musicmind.images.format=svg (default) a SVG is generated, the PNG is only rendered when it is needed
+ * (ffmpeg can't use the SVG for the video, see ensurePng()). With musicmind.images.format=png the PNG is generated.
+ */
 @Stateless
 public class PersonalityImageGenerator {
-    private static final int TOP = 110;
-    private static final int BETWEEN = 35;
-    private static final int SIDE = 100;
-
-    private static final int IMAGE_WIDTH = 1280;
-    private static final int IMAGE_HEIGHT = 720;
-
-    private static final int BORDER_WIDTH = 4;
-
-    private static final int BAR_WIDTH = IMAGE_WIDTH - (2 * SIDE + 2 * BORDER_WIDTH);
-    private static final int BAR_HEIGHT = (IMAGE_HEIGHT - (2 * TOP + 10 * BORDER_WIDTH + 4 * BETWEEN)) / 5;
+    private static final String IMAGE_PATH = "/mnt/personality_images";
+    private static final boolean SVG = "svg".equalsIgnoreCase(Settings.getString("images.format", "svg"));
 
-    private static final Color[] PERSONALITY_COLORS = {
-            Color.decode("#29B765"),
-            Color.decode("#EEC20F"),
-            Color.decode("#E74C3C"),
-            Color.decode("#9B59B6"),
-            Color.decode("#3498DB")
-    };
-    private static final Color BACKGROUND_COLOR = Color.decode("#212121");
-    private static final Color BORDER_COLOR = Color.decode("#FFFFFF");
-
-    private static BufferedImage[] ICONS = null;
+    private static PersonalityImageRenderer RENDERER = null;
+    private static PersonalitySvgRenderer SVG_RENDERER = null;
     static {
         try {
-            ICONS = new BufferedImage[]{
-                    ImageIO.read(new File("/mnt/personality_images/icons/star.png")),
-                    ImageIO.read(new File("/mnt/personality_images/icons/star_border.png")),
-                    ImageIO.read(new File("/mnt/personality_images/icons/shuffle.png")),
-                    ImageIO.read(new File("/mnt/personality_images/icons/list.png")),
-                    ImageIO.read(new File("/mnt/personality_images/icons/person.png")),
-                    ImageIO.read(new File("/mnt/personality_images/icons/person_add.png")),
-                    ImageIO.read(new File("/mnt/personality_images/icons/lock_outline.png")),
-                    ImageIO.read(new File("/mnt/personality_images/icons/lock_open.png")),
-                    ImageIO.read(new File("/mnt/personality_images/icons/mood.png")),
-                    ImageIO.read(new File("/mnt/personality_images/icons/mood_bad.png"))
-            };
+            RENDERER = PersonalityImageRenderer.fromIconDirectory();
+            SVG_RENDERER = PersonalitySvgRenderer.fromIconDirectory(RENDERER.getIconSize());
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    @Inject
+    private UserManager userManager;
 
     public void generatePersonalityImage(User user) {
-        double[] values = {
-                user.getOpenness(),
-                user.getConscientiousness(),
-                user.getExtraversion(),
-                user.getAgreeableness(),
-                user.getNeuroticism()
-        };
-        String pathname = String.format("/mnt/personality_images/%s_%s.png", user.getUserId().hashCode(), user.getUserName());
-        BufferedImage bufimage = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
-        Graphics2D graphic2D = bufimage.createGraphics();
-        int iconSize = ICONS[0].getHeight();
+        String filepath = String.format("%s_%s", user.getUserId().hashCode(), user.getUserName());
+        File png = new File(IMAGE_PATH, filepath + ".png");
         try {
-            File output = new File(pathname);
-            graphic2D.setBackground(BACKGROUND_COLOR);
-            graphic2D.setStroke(new BasicStroke(BORDER_WIDTH));
-
-            for (int i = 0; i < PERSONALITY_COLORS.length; i++) {
-                int rightIconX = (SIDE - iconSize)/2;
-                int leftIconX = IMAGE_WIDTH - (rightIconX + iconSize);
-                int iconY = (TOP + i * (BORDER_WIDTH + BAR_HEIGHT + BETWEEN)) + (BAR_HEIGHT - iconSize)/2;
-                int barBorderX = SIDE;
-                int barBorderY = TOP + i * (BORDER_WIDTH + BAR_HEIGHT + BETWEEN);
-                int barX = SIDE + BORDER_WIDTH / 2;
-                int barY = TOP + BORDER_WIDTH / 2 + i * (BORDER_WIDTH + BAR_HEIGHT + BETWEEN);
-                int barWidth = (int) (BAR_WIDTH * (values[i] / 100));
-
-                graphic2D.drawImage(ICONS[i*2],rightIconX , iconY, null);
-                graphic2D.setPaint(BORDER_COLOR);
-                graphic2D.drawRect(barBorderX, barBorderY, BAR_WIDTH + BORDER_WIDTH, BAR_HEIGHT + BORDER_WIDTH);
-                graphic2D.setPaint(PERSONALITY_COLORS[i]);
-                graphic2D.fillRect(barX, barY, barWidth, BAR_HEIGHT);
-                graphic2D.drawImage(ICONS[i*2+1], leftIconX, iconY, null);
+            if (SVG) {
+                SVG_RENDERER.writeSvg(valuesOf(user), new File(IMAGE_PATH, filepath + ".svg"));
+                png.delete(); // outdated if the user answered the questions again
+            } else {
+                RENDERER.writePng(valuesOf(user), png);
             }
+        } catch (IOException log) {
+            System.out.println(log);
+        }
+    }
+
+    /**
+     * Renders the PNG of the user if it doesn't exist yet
+     * @param filepath Path to the files belonging to the user
+     * @return false if there is no such user or the PNG could not be written
+     */
+    public boolean ensurePng(String filepath) {
+        File png = new File(IMAGE_PATH, filepath + ".png");
+        if (png.isFile())
+            return true;
 
-            ImageIO.write(bufimage, "png", output);
+        User user = userManager.retrieveByFilename(filepath);
+        if (user == null)
+            return false;
+        try {
+            RENDERER.writePng(valuesOf(user), png);
+            return true;
         } catch (IOException log) {
             System.out.println(log);
+            return false;
         }
     }
+
+    private static double[] valuesOf(User user) {
+        return new double[]{
+                user.getOpenness(),
+                user.getConscientiousness(),
+                user.getExtraversion(),
+                user.getAgreeableness(),
+                user.getNeuroticism()
+        };
+    }
 }
@@ -0,0 +1,58 @@
+package com.musicmindproject.backend.logic;
+
+import com.musicmindproject.backend.logic.audio.AudioConverter;
+import com.musicmindproject.backend.logic.tracks.TrackClaim;
+import com.musicmindproject.backend.logic.tracks.TrackIndex;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+
+@Stateless
+public class PersonalityMusicGenerator {
+    private static final String MUSIC_PATH = "/mnt/personality_music";
+
+    @Inject
+    private TrackIndex trackIndex;
+    @Inject
+    private AudioConverter audioConverter;
+
+    /**
+     *
+     * @param userName name of the user
+     * @param userID id of the user (if already in database)
+     * @param values the evaluated values of the users personality
+     * @return the users generated music-file
+     *
+     * Creates a music-file based on the users personality. The generated track that fits the personality best
+     * (see TrackIndex.claim()) is used up, it is only converted here if it was not converted in advance.
+     */
+    public File createMusicFile(String userName, String userID, double[] values) {
+        TrackClaim claim = trackIndex.claim(values);
+        if (claim == null)
+            throw new IllegalStateException("No generated track available");
+
+        File destination = new File(MUSIC_PATH + "/" + userID.hashCode() + "_" + userName + ".mp3");
+        File convertedTrack = claim.getTrack().getMp3File();
+        try {
+            if (convertedTrack.isFile()) {
+                AudioConverter.move(convertedTrack, destination);
+                audioConverter.recordServed(true);
+            } else {
+                // the claim must not time out while the track is converted
+                audioConverter.convertToMP3(claim.getFile(), destination, claim::refresh);
+                audioConverter.recordServed(false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            claim.release();
+            throw new IllegalStateException("Creating the music-file was interrupted", e);
+        } catch (IOException e) {
+            claim.release();
+            throw new IllegalStateException("Creating the music-file failed", e);
+        }
+        claim.consume();
+        return destination;
+    }
+}
@@ -0,0 +1,162 @@
+package com.musicmindproject.backend.logic;
+
+import com.musicmindproject.backend.logic.database.FactorSnapshot;
+
+/**
+ * Precompiled form of a FactorSnapshot that scores all five personality values in a single pass over the answers.
+ *
+ * Answers range from 0 to 4. A question with a negative factor is answered reversed (4 - answer), so its
+ * contribution |f| * (4 - answer) is split into the constant 4 * |f| and the weight -|f|. Weights and constants are
+ * divided by the sum of the absolute factors and mapped from 0|4 to 0|100 in advance, which leaves one
+ * multiply-add per answer and value. Weights are stored per question, in the order of the outputs.
+ */
+public final class ScoringKernel {
+    public static final int VALUES = 5;
+
+    /**
+     * Position of every category of the FactorSnapshot in the outputs
+     * (NEUROTICISM, CONSCIENTIOUSNESS, AGREEABLENESS, EXTRAVERSION, OPENNESS -> 0, 3, 4, 2, 1)
+     */
+    private static final int[] OUTPUT_INDEX = {0, 3, 4, 2, 1};
+    private static final double MAX_ANSWER = 4;
+    private static final double NEUTRAL_ANSWER = MAX_ANSWER / 2;
+    private static final double MAX_VALUE = 100;
+
+    private final String version;
+    private final int numberOfAnswers;
+    private final double[] weights;
+    private final double[] constants;
+    private final double[] neutralSums;
+
+    private ScoringKernel(String version, int numberOfAnswers, double[] weights, double[] constants) {
+        this.version = version;
+        this.numberOfAnswers = numberOfAnswers;
+        this.weights = weights;
+        this.constants = constants;
+        this.neutralSums = constants.clone();
+        for (int i = 0; i < weights.length; i++)
+            neutralSums[i % VALUES] += NEUTRAL_ANSWER * weights[i];
+    }
+
+    /**
+     * @param factors factors of all questions
+     * @return kernel computing the same values as evaluating every category separately
+     */
+    public static ScoringKernel compile(FactorSnapshot factors) {
+        int numberOfAnswers = factors.getNumberOfAnswers();
+        double[] weights = new double[numberOfAnswers * VALUES];
+        double[] constants = new double[VALUES];
+
+        for (int type = 0; type < VALUES; type++) {
+            int output = OUTPUT_INDEX[type];
+            double factorSum = 0;
+            for (int i = 0; i < numberOfAnswers; i++)
+                factorSum += Math.abs(factors.getFactor(type, i));
+            if (factorSum == 0)
+                continue;
+
+            double scale = MAX_VALUE / MAX_ANSWER / factorSum;
+            for (int i = 0; i < numberOfAnswers; i++) {
+                double factor = factors.getFactor(type, i);
+                if (factor < 0)
+                    constants[output] -= factor * MAX_ANSWER * scale;
+                weights[i * VALUES + output] = factor * scale;
+            }
+        }
+        return new ScoringKernel(factors.getVersion(), numberOfAnswers, weights, constants);
+    }
+
+    /**
+     * @param inputs answer values, one for every question
+     * @param outputs array of length 5 the personality values are written to, -1 if the number of answers is wrong
+     */
+    public void score(double[] inputs, double[] outputs) {
+        if (inputs == null || inputs.length != numberOfAnswers) {
+            for (int i = 0; i < VALUES; i++)
+                outputs[i] = -1;
+            return;
+        }
+
+        double v0 = constants[0], v1 = constants[1], v2 = constants[2], v3 = constants[3], v4 = constants[4];
+        for (int i = 0, w = 0; i < numberOfAnswers; i++, w += VALUES) {
+            double input = inputs[i];
+            v0 += input * weights[w];
+            v1 += input * weights[w + 1];
+            v2 += input * weights[w + 2];
+            v3 += input * weights[w + 3];
+            v4 += input * weights[w + 4];
+        }
+        outputs[0] = clamp(v0);
+        outputs[1] = clamp(v1);
+        outputs[2] = clamp(v2);
+        outputs[3] = clamp(v3);
+        outputs[4] = clamp(v4);
+    }
+
+    /**
+     * @param inputs answer values, one for every question
+     * @return the calculated personality values
+     */
+    public double[] score(double[] inputs) {
+        double[] outputs = new double[VALUES];
+        score(inputs, outputs);
+        return outputs;
+    }
+
+    /**
+     * @param batch answer values of many users
+     * @return the calculated personality values for every row of the batch
+     */
+    public double[][] score(double[][] batch) {
+        double[][] outputs = new double[batch.length][VALUES];
+        for (int i = 0; i < batch.length; i++)
+            score(batch[i], outputs[i]);
+        return outputs;
+    }
+
+    /**
+     * @return partial sums of a questionnaire in which every question is answered neutrally (2),
+     * to be updated with update() as the real answers arrive
+     */
+    public double[] newPartialSums() {
+        return neutralSums.clone();
+    }
+
+    /**
+     * Replaces the answer of one question in the partial sums
+     * @param sums partial sums created by newPartialSums()
+     * @param question index of the question
+     * @param oldValue previous answer of the question (2 if it was not answered yet)
+     * @param newValue new answer of the question
+     */
+    public void update(double[] sums, int question, double oldValue, double newValue) {
+        double delta = newValue - oldValue;
+        for (int i = 0, w = question * VALUES; i < VALUES; i++, w++)
+            sums[i] += delta * weights[w];
+    }
+
+    /**
+     * @param sums partial sums created by newPartialSums()
+     * @param outputs array of length 5 the personality values are written to
+     */
+    public void finish(double[] sums, double[] outputs) {
+        for (int i = 0; i < VALUES; i++)
+            outputs[i] = clamp(sums[i]);
+    }
+
+    public static double getNeutralAnswer() {
+        return NEUTRAL_ANSWER;
+    }
+
+    private static double clamp(double value) {
+        return value < 0 ? 0 : value > MAX_VALUE ? MAX_VALUE : value;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public int getNumberOfAnswers() {
+        return numberOfAnswers;
+    }
+}
@@ -0,0 +1,94 @@
+package com.musicmindproject.backend.logic;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Questionnaire that is answered one question at a time. The personality values are kept up to date with every
+ * answer (constant time per answer), unanswered questions count as neutral answers until they are answered.
+ */
+public class ScoringSession {
+    private final String sessionId;
+    private final ScoringKernel kernel;
+    private final double[] answers;
+    private final boolean[] answered;
+    private final double[] sums;
+    private int numberOfAnswered;
+    private volatile long lastAccess;
+
+    public ScoringSession(String sessionId, ScoringKernel kernel) {
+        this.sessionId = sessionId;
+        this.kernel = kernel;
+        this.answers = new double[kernel.getNumberOfAnswers()];
+        this.answered = new boolean[kernel.getNumberOfAnswers()];
+        this.sums = kernel.newPartialSums();
+        Arrays.fill(answers, ScoringKernel.getNeutralAnswer());
+        touch();
+    }
+
+    /**
+     * @param question index of the question
+     * @param value answer value (whole number from 0 to 4, the stored answers have to reproduce the score)
+     * @throws IllegalArgumentException if the question doesn't exist or the answer is not valid
+     */
+    public synchronized void answer(int question, double value) {
+        if (question < 0 || question >= answers.length)
+            throw new IllegalArgumentException("Question " + question + " does not exist");
+        if (!(value >= 0 && value <= 4))
+            throw new IllegalArgumentException("Answer " + value + " is out of range");
+        if (value != Math.rint(value))
+            throw new IllegalArgumentException("Answer " + value + " is not a whole number");
+
+        kernel.update(sums, question, answers[question], value);
+        answers[question] = value;
+        if (!answered[question]) {
+            answered[question] = true;
+            numberOfAnswered++;
+        }
+        touch();
+    }
+
+    /**
+     * @return the current personality values, final once every question is answered
+     */
+    public synchronized double[] getValues() {
+        double[] values = new double[ScoringKernel.VALUES];
+        kernel.finish(sums, values);
+        return values;
+    }
+
+    public synchronized int getNumberOfAnswered() {
+        return numberOfAnswered;
+    }
+
+    public int getNumberOfQuestions() {
+        return answers.length;
+    }
+
+    public synchronized boolean isComplete() {
+        return numberOfAnswered == answers.length;
+    }
+
+    /**
+     * @return comma separated answers in the order of the questions
+     */
+    public synchronized String getAnswers() {
+        return Arrays.stream(answers).mapToObj(answer -> "" + (int) answer).collect(Collectors.joining(","));
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getFactorVersion() {
+        return kernel.getVersion();
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    private void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+}
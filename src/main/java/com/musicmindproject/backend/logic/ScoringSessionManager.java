@@ -0,0 +1,52 @@
+package com.musicmindproject.backend.logic;
+
+import javax.ejb.*;
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the questionnaires that are currently being answered. Sessions that were not touched for
+ * musicmind.sessions.ttlMinutes minutes are evicted.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ScoringSessionManager {
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(Settings.getLong("sessions.ttlMinutes", 30));
+    private static final int MAX_SESSIONS = Settings.getInt("sessions.max", 10000);
+
+    @Inject
+    private PersonalityEvaluator evaluator;
+
+    private final Map<String, ScoringSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * @param sessionId ID of the session
+     * @return the existing session or a new one, null if the maximum number of sessions is reached
+     */
+    public ScoringSession getOrCreate(String sessionId) {
+        ScoringSession session = sessions.get(sessionId);
+        if (session != null || sessions.size() >= MAX_SESSIONS)
+            return session;
+        return sessions.computeIfAbsent(sessionId, id -> new ScoringSession(id, evaluator.getKernel()));
+    }
+
+    public ScoringSession retrieve(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    public ScoringSession remove(String sessionId) {
+        return sessions.remove(sessionId);
+    }
+
+    public int getNumberOfSessions() {
+        return sessions.size();
+    }
+
+    @Schedule(minute = "*", hour = "*", persistent = false)
+    public void evictExpiredSessions() {
+        long expired = System.currentTimeMillis() - TTL_MILLIS;
+        sessions.values().removeIf(session -> session.getLastAccess() < expired);
+    }
+}
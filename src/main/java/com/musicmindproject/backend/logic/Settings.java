@@ -0,0 +1,43 @@
+package com.musicmindproject.backend.logic;
+
+/**
+ * Reads tunables from the system properties of the application server (e.g. set in standalone.xml).
+ * Every key is prefixed with "musicmind.", if a property is missing or malformed the default value is used.
+ */
+public final class Settings {
+    private static final String PREFIX = "musicmind.";
+
+    private Settings() {
+    }
+
+    public static String getString(String key, String defaultValue) {
+        return System.getProperty(PREFIX + key, defaultValue);
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(getString(key, "" + defaultValue).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + PREFIX + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(getString(key, "" + defaultValue).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + PREFIX + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static double getDouble(String key, double defaultValue) {
+        try {
+            return Double.parseDouble(getString(key, "" + defaultValue).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + PREFIX + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
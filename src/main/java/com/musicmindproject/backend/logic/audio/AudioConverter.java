@@ -0,0 +1,166 @@
+package com.musicmindproject.backend.logic.audio;
+
+import com.musicmindproject.backend.logic.Settings;
+import com.musicmindproject.backend.logic.process.ProcessRunner;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts generated MIDI-files to mp3. Tracks are normally converted by MidiGeneratorRunner right after they
+ * were generated, converting while a request waits is only the fallback if no converted track is available.
+ * Conversions are stored in the ConvertedAudioCache, identical MIDI-files are only converted once.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AudioConverter {
+    @Inject
+    private ConvertedAudioCache cache;
+    @Inject
+    private AudioStreams streams;
+    @Inject
+    private ProcessRunner processRunner;
+
+    private AudioRenderer renderer;
+
+    private final AtomicLong preConverted = new AtomicLong();
+    private final AtomicLong inlineConverted = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        renderer = AudioRenderer.of(Settings.getString("audio.renderer", "timidity"), processRunner);
+    }
+
+    /**
+     *
+     * @param toConvert file to convert (has to be in MIDI-format)
+     * @param target file the mp3 is written to, it appears only once it is complete
+     *
+     * Converts a MIDI-File to a mp3 with the configured AudioRenderer, MIDI-files that were converted before are taken
+     * from the ConvertedAudioCache. While the mp3 is being encoded it can be streamed from AudioStreams (by the name
+     * of the target without extension).
+     */
+    public void convertToMP3(File toConvert, File target) throws IOException, InterruptedException {
+        convertToMP3(toConvert, target, () -> {});
+    }
+
+    /**
+     * @param progress called at most every minute while the mp3 is being encoded
+     * @see #convertToMP3(File, File)
+     */
+    public void convertToMP3(File toConvert, File target, Runnable progress) throws IOException, InterruptedException {
+        String key = cache.keyOf(toConvert, renderer.getSettings());
+        File cached = cache.lookup(key);
+        if (cached != null) {
+            try {
+                cache.link(cached, target);
+                return;
+            } catch (NoSuchFileException e) {
+                // evicted after the lookup, converted again
+            }
+        }
+
+        String name = target.getName().replaceFirst("\\.mp3$", "");
+        ProgressiveFile stream = streams.begin(name, cache.partFileOf(key));
+        boolean success = false;
+        try {
+            try (OutputStream out = new ProgressOutputStream(stream.getOutputStream(), progress)) {
+                renderer.render(toConvert, out);
+            }
+            stream.finish(true); // the file has to be closed before it is moved into the cache
+            // linked before it is added, evicting can't remove the conversion before it was handed out
+            cache.link(stream.getFile(), target);
+            cache.put(key, stream.getFile());
+            success = true;
+        } finally {
+            streams.finish(name, stream, success);
+            Files.deleteIfExists(stream.getFile().toPath());
+        }
+    }
+
+    /**
+     * Moves a file, atomically if source and destination are on the same file system
+     */
+    public static void move(File source, File destination) throws IOException {
+        try {
+            Files.move(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @param converted true if the track handed out was converted in advance, false if it had to be converted inline
+     */
+    public void recordServed(boolean converted) {
+        (converted ? preConverted : inlineConverted).incrementAndGet();
+    }
+
+    /**
+     * @return share of the handed out tracks that had to be converted while the request was waiting
+     */
+    public double getFallbackRate() {
+        long inline = inlineConverted.get();
+        long total = inline + preConverted.get();
+        return total == 0 ? 0 : inline / (double) total;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("preConverted", preConverted.get());
+        statistics.put("inlineConverted", inlineConverted.get());
+        statistics.put("fallbackRate", getFallbackRate());
+        statistics.put("cache", cache.getStatistics());
+        return statistics;
+    }
+
+    /**
+     * Reports the progress of an encoding while it is written
+     */
+    private static final class ProgressOutputStream extends FilterOutputStream {
+        private static final long INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+        private final Runnable progress;
+        private long reported = System.nanoTime();
+
+        ProgressOutputStream(OutputStream out, Runnable progress) {
+            super(out);
+            this.progress = progress;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            report();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            report();
+        }
+
+        private void report() {
+            long now = System.nanoTime();
+            if (now - reported >= INTERVAL_NANOS) {
+                reported = now;
+                progress.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.musicmindproject.backend.logic.audio;
+
+import com.musicmindproject.backend.logic.process.ProcessRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders a MIDI-file to a mp3, AudioConverter uses the renderer selected by musicmind.audio.renderer
+ */
+public interface AudioRenderer {
+    /**
+     * @param midi file to convert (has to be in MIDI-format)
+     * @param target stream the mp3 is written to while it is being encoded
+     */
+    void render(File midi, OutputStream target) throws IOException, InterruptedException;
+
+    /**
+     * @return description of every setting that influences the output (part of the key in the ConvertedAudioCache)
+     */
+    String getSettings();
+
+    /**
+     * @param name "javasound" for the JavaSoundRenderer, everything else means timidity
+     * @param processRunner runs the external processes of the renderer
+     * @return the renderer with the given name, timidity if the wanted one is not available
+     */
+    static AudioRenderer of(String name, ProcessRunner processRunner) {
+        if ("javasound".equalsIgnoreCase(name)) {
+            if (JavaSoundRenderer.isAvailable())
+                return new JavaSoundRenderer(processRunner);
+            System.err.println("javax.sound.midi can't render offline in this JVM, using timidity");
+        }
+        return new TimidityRenderer(processRunner);
+    }
+}
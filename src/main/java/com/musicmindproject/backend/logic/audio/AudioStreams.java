@@ -0,0 +1,49 @@
+package com.musicmindproject.backend.logic.audio;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the mp3-files that are currently being encoded, so they can be streamed to listeners
+ * before the encoding is complete (see MusicEndpoint.getStream())
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AudioStreams {
+    private final Map<String, ProgressiveFile> streams = new ConcurrentHashMap<>();
+
+    /**
+     * @param name name of the mp3-file that is being created (without extension)
+     * @param part file the encoder writes to
+     */
+    public ProgressiveFile begin(String name, File part) throws FileNotFoundException {
+        ProgressiveFile stream = new ProgressiveFile(part);
+        streams.put(name, stream);
+        return stream;
+    }
+
+    /**
+     * Has to be called once the mp3-file is complete (or the encoding failed), the stream is no longer listed afterwards
+     */
+    public void finish(String name, ProgressiveFile stream, boolean success) {
+        stream.finish(success);
+        streams.remove(name, stream);
+    }
+
+    /**
+     * @param name name of the mp3-file (without extension)
+     * @return the stream of the file, null if the file is not being encoded
+     */
+    public ProgressiveFile get(String name) {
+        return streams.get(name);
+    }
+
+    public int size() {
+        return streams.size();
+    }
+}
@@ -0,0 +1,183 @@
+package com.musicmindproject.backend.logic.audio;
+
+import com.musicmindproject.backend.logic.Settings;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Content-addressed cache of converted audio files in /mnt/personality_music/.cache. Entries are keyed by the hash
+ * of the MIDI-file and the encoder settings, so the same input is never converted twice. Files handed out are hard
+ * links to the cache entry (copies if the file system doesn't support links). When the entries exceed
+ * musicmind.audio.cacheBudgetMb, the least recently used ones are evicted; files handed out stay intact.
+ * The budget only covers the entries in the cache directory: the tracks handed out to the users
+ * (/mnt/personality_music/*.mp3) are their music and are never counted or reaped. Blocks of an evicted entry that is
+ * still linked to such a track are only freed when the track is replaced.
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ConvertedAudioCache {
+    private static final File CACHE_DIRECTORY = new File(Settings.getString("audio.cacheDirectory", "/mnt/personality_music/.cache"));
+    private static final long BUDGET_BYTES = Settings.getLong("audio.cacheBudgetMb", 2048) * 1024 * 1024;
+    private static final String EXTENSION = ".mp3";
+    private static final String PART_EXTENSION = ".part";
+
+    /**
+     * Sizes of the entries, least recently used first
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long hits;
+    private long misses;
+
+    @PostConstruct
+    public void init() {
+        if (!CACHE_DIRECTORY.isDirectory() && !CACHE_DIRECTORY.mkdirs()) {
+            System.err.println("Can't create " + CACHE_DIRECTORY);
+            return;
+        }
+        File[] parts = CACHE_DIRECTORY.listFiles((dir, name) -> name.endsWith(PART_EXTENSION));
+        if (parts != null)
+            for (File part : parts)
+                if (!part.delete()) // conversion interrupted by a restart
+                    System.err.println("Can't delete " + part);
+        File[] files = CACHE_DIRECTORY.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null)
+            return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        synchronized (entries) {
+            for (File file : files) {
+                entries.put(file.getName().substring(0, file.getName().length() - EXTENSION.length()), file.length());
+                size += file.length();
+            }
+            evict();
+        }
+    }
+
+    /**
+     * @param midiFile input of the conversion
+     * @param encoderSettings description of every setting that influences the output
+     * @return the key of the converted file
+     */
+    public String keyOf(File midiFile, String encoderSettings) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(Files.newInputStream(midiFile.toPath()), digest)) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) ;
+            }
+            digest.update(encoderSettings.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest())
+                key.append(String.format("%02x", b));
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param key key of the converted file
+     * @return the cached file, null if it is not cached
+     */
+    public File lookup(String key) {
+        File file = fileOf(key);
+        synchronized (entries) {
+            if (entries.get(key) != null && file.isFile()) {
+                hits++;
+                return file;
+            }
+            Long length = entries.remove(key);
+            if (length != null)
+                size -= length;
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * @param key key of the converted file
+     * @return file in the cache directory the conversion can be written to before it is added with put()
+     */
+    public File partFileOf(String key) {
+        return new File(CACHE_DIRECTORY, key + "." + UUID.randomUUID() + PART_EXTENSION);
+    }
+
+    /**
+     * @param key key of the converted file
+     * @param converted complete conversion (written to a file created by partFileOf())
+     * @return the cached file
+     */
+    public File put(String key, File converted) throws IOException {
+        File file = fileOf(key);
+        AudioConverter.move(converted, file);
+        synchronized (entries) {
+            Long previous = entries.put(key, file.length());
+            size += file.length() - (previous == null ? 0 : previous);
+            evict();
+        }
+        return file;
+    }
+
+    /**
+     * Hands out a cached file: destination becomes a hard link to the cache entry (a copy if links are not supported)
+     * @param cached file returned by lookup(), or a conversion before it is added with put()
+     * @param destination file to create, an existing file is replaced
+     * @throws NoSuchFileException if the entry was evicted after it was looked up
+     */
+    public void link(File cached, File destination) throws IOException {
+        File part = new File(destination.getAbsolutePath() + "." + UUID.randomUUID() + PART_EXTENSION);
+        try {
+            try {
+                Files.createLink(part.toPath(), cached.toPath());
+            } catch (NoSuchFileException e) {
+                throw e;
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(cached.toPath(), part.toPath());
+            }
+            AudioConverter.move(part, destination);
+        } finally {
+            Files.deleteIfExists(part.toPath());
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the cache fits into its budget
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > BUDGET_BYTES && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            fileOf(entry.getKey()).delete();
+            size -= entry.getValue();
+            iterator.remove();
+        }
+    }
+
+    private static File fileOf(String key) {
+        return new File(CACHE_DIRECTORY, key + EXTENSION);
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        synchronized (entries) {
+            statistics.put("entries", entries.size());
+            statistics.put("bytes", size);
+            statistics.put("budgetBytes", BUDGET_BYTES);
+            statistics.put("hits", hits);
+            statistics.put("misses", misses);
+        }
+        return statistics;
+    }
+}
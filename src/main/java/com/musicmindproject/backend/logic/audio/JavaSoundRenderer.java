@@ -0,0 +1,134 @@
+package com.musicmindproject.backend.logic.audio;
+
+import com.musicmindproject.backend.logic.process.ProcessRequest;
+import com.musicmindproject.backend.logic.process.ProcessRunner;
+
+import javax.sound.midi.*;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders MIDI-files inside the JVM with the software synthesizer of javax.sound.midi, the PCM-stream is piped
+ * straight into lame (no bash and timidity are forked).
+ * The synthesizer can only render offline through AudioSynthesizer.openStream(), which is not exported from
+ * java.desktop on Java 9+: the JVM has to be started with --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED,
+ * otherwise the renderer is not available.
+ */
+public class JavaSoundRenderer implements AudioRenderer {
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private static final long TAIL_MICROSECONDS = 2_000_000;
+    private static final int TEMPO_META_TYPE = 0x51;
+    private static final Method OPEN_STREAM = findOpenStream();
+
+    private final ProcessRunner processRunner;
+
+    public JavaSoundRenderer(ProcessRunner processRunner) {
+        this.processRunner = processRunner;
+    }
+
+    private static Method findOpenStream() {
+        try {
+            Synthesizer synthesizer = MidiSystem.getSynthesizer();
+            for (Class<?> type : synthesizer.getClass().getInterfaces()) {
+                if (type.getName().equals("com.sun.media.sound.AudioSynthesizer")) {
+                    Method openStream = type.getMethod("openStream", AudioFormat.class, Map.class);
+                    openStream.setAccessible(true);
+                    return openStream;
+                }
+            }
+        } catch (MidiUnavailableException | NoSuchMethodException | RuntimeException e) {
+            System.err.println(e.getLocalizedMessage());
+        }
+        return null;
+    }
+
+    public static boolean isAvailable() {
+        return OPEN_STREAM != null;
+    }
+
+    @Override
+    public void render(File midi, OutputStream target) throws IOException, InterruptedException {
+        System.out.println("Rendering " + midi.getAbsolutePath());
+        Sequence sequence;
+        Synthesizer synthesizer;
+        try {
+            sequence = MidiSystem.getSequence(midi);
+            synthesizer = MidiSystem.getSynthesizer();
+        } catch (InvalidMidiDataException | MidiUnavailableException e) {
+            throw new IOException("Can't read " + midi, e);
+        }
+
+        try (AudioInputStream pcm = (AudioInputStream) OPEN_STREAM.invoke(synthesizer, FORMAT, null)) {
+            long length = send(sequence, synthesizer.getReceiver()) + TAIL_MICROSECONDS;
+            long bytes = (long) (length / 1_000_000.0 * FORMAT.getFrameRate()) * FORMAT.getFrameSize();
+            processRunner.runAndWait(new ProcessRequest("lame", "lame", "-r", "-s", "44.1", "--bitwidth", "16", "--signed", "--little-endian", "-b", "64", "-", "-")
+                    .input(in -> copy(pcm, in, bytes))
+                    .output(target));
+        } catch (ReflectiveOperationException | MidiUnavailableException e) {
+            throw new IOException("Rendering " + midi + " failed", e);
+        } finally {
+            synthesizer.close();
+        }
+    }
+
+    /**
+     * Copies the rendered PCM-stream into the stdin of lame
+     */
+    private static void copy(AudioInputStream pcm, OutputStream out, long bytes) throws IOException {
+        byte[] buffer = new byte[FORMAT.getFrameSize() * 4096];
+        long remaining = bytes;
+        while (remaining > 0) {
+            int read = pcm.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0)
+                break;
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Sends all events of the sequence to the synthesizer, timestamped in microseconds (the synthesizer schedules
+     * them while rendering the stream)
+     * @return length of the sequence in microseconds
+     */
+    private static long send(Sequence sequence, Receiver receiver) {
+        List<MidiEvent> events = new ArrayList<>();
+        for (Track track : sequence.getTracks())
+            for (int i = 0; i < track.size(); i++)
+                events.add(track.get(i));
+        events.sort(Comparator.comparingLong(MidiEvent::getTick));
+
+        boolean ppq = sequence.getDivisionType() == Sequence.PPQ;
+        double microsPerTick = ppq ? 500_000.0 / sequence.getResolution()
+                : 1_000_000.0 / (sequence.getDivisionType() * sequence.getResolution());
+        long lastTick = 0;
+        double micros = 0;
+        for (MidiEvent event : events) {
+            micros += (event.getTick() - lastTick) * microsPerTick;
+            lastTick = event.getTick();
+            MidiMessage message = event.getMessage();
+            if (message instanceof MetaMessage) {
+                MetaMessage meta = (MetaMessage) message;
+                byte[] data = meta.getData();
+                if (ppq && meta.getType() == TEMPO_META_TYPE && data.length == 3)
+                    microsPerTick = ((data[0] & 0xff) << 16 | (data[1] & 0xff) << 8 | (data[2] & 0xff)) / (double) sequence.getResolution();
+            } else {
+                receiver.send(message, (long) micros);
+            }
+        }
+        return (long) micros;
+    }
+
+    @Override
+    public String getSettings() {
+        return "javax.sound.midi 44100Hz/16bit/stereo | lame -b 64";
+    }
+}
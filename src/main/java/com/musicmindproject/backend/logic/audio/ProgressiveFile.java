@@ -0,0 +1,123 @@
+package com.musicmindproject.backend.logic.audio;
+
+import com.musicmindproject.backend.logic.Settings;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A file that is still being written by an encoder. Readers opened with openReader() get every byte as soon as it
+ * was written and block until more bytes are written or the file is finished, so listeners can start playing before
+ * the encoding is complete. Readers keep working after the file was moved (they hold their own file handle).
+ */
+public class ProgressiveFile {
+    private static final long STALL_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(Settings.getLong("audio.streamStallSeconds", 60));
+
+    private final File file;
+    private final FileOutputStream out;
+    private long written;
+    private boolean finished;
+    private boolean failed;
+
+    ProgressiveFile(File file) throws FileNotFoundException {
+        this.file = file;
+        this.out = new FileOutputStream(file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return stream the encoder writes to, closing it does not finish the file
+     */
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                synchronized (ProgressiveFile.this) {
+                    written += len;
+                    ProgressiveFile.this.notifyAll();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param success false if the encoding failed, readers then get an IOException instead of the end of the stream
+     * (only the first call has an effect)
+     */
+    synchronized void finish(boolean success) {
+        if (finished)
+            return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.err.println(e.getLocalizedMessage());
+            success = false;
+        }
+        finished = true;
+        failed = !success;
+        notifyAll();
+    }
+
+    /**
+     * @return stream of the file from its beginning, that ends once the encoder has finished
+     */
+    public InputStream openReader() throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                long available = awaitBytes(position);
+                if (available <= 0)
+                    return -1;
+                int read = in.read(b, off, (int) Math.min(len, available));
+                if (read > 0)
+                    position += read;
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    /**
+     * Blocks until bytes after position were written or the file is finished
+     * @return number of bytes that can be read after position, 0 at the end of the file
+     */
+    private synchronized long awaitBytes(long position) throws IOException {
+        long deadline = System.currentTimeMillis() + STALL_TIMEOUT_MILLIS;
+        while (written <= position && !finished) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                throw new IOException("Encoding of " + file + " stalled");
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        if (failed)
+            throw new IOException("Encoding of " + file + " failed");
+        return written - position;
+    }
+}
@@ -0,0 +1,30 @@
+package com.musicmindproject.backend.logic.audio;
+
+import com.musicmindproject.backend.logic.process.ProcessRequest;
+import com.musicmindproject.backend.logic.process.ProcessRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders MIDI-files with the external processes timidity and lame (stdout of timidity is piped into lame)
+ */
+public class TimidityRenderer implements AudioRenderer {
+    private final ProcessRunner processRunner;
+
+    public TimidityRenderer(ProcessRunner processRunner) {
+        this.processRunner = processRunner;
+    }
+
+    @Override
+    public void render(File midi, OutputStream target) throws IOException, InterruptedException {
+        processRunner.pipeAndWait(new ProcessRequest("timidity", "timidity", midi.getAbsolutePath(), "-Ow", "-o", "-"),
+                new ProcessRequest("lame", "lame", "-", "-b", "64", "-").output(target));
+    }
+
+    @Override
+    public String getSettings() {
+        return "timidity -Ow | lame -b 64";
+    }
+}
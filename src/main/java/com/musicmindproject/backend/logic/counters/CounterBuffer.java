@@ -0,0 +1,259 @@
+package com.musicmindproject.backend.logic.counters;
+
+import com.musicmindproject.backend.entities.User;
+import com.musicmindproject.backend.logic.Settings;
+import com.musicmindproject.backend.logic.database.UserManager;
+import com.musicmindproject.backend.logic.ranking.TrendingIndex;
+import com.musicmindproject.backend.logic.ranking.UserFeeds;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.*;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind buffer of the plays and shares of the users. Events are counted in memory (LongAdder per user) and
+ * added to the database every 5 seconds with one batched UPDATE (see UserManager.addCounts()), so recording an event
+ * never reads or locks the row of the user.
+ * Every event is appended to the CounterLog (musicmind.counters.log) when it is counted. On a flush the log is
+ * rotated, the rotated files are deleted once the database was updated. Files left over by a crash are replayed at
+ * startup. Counts are applied at least once: a crash between the update and the deletion counts the flushed events twice.
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class CounterBuffer {
+    private static final File LOG_FILE = new File(Settings.getString("counters.log", "/mnt/personality_counters/counters.log"));
+
+    @Inject
+    private UserManager userManager;
+    @Inject
+    private UserFeeds feeds;
+    @Inject
+    private TrendingIndex trending;
+
+    /**
+     * Recording holds the read lock (concurrently), swapping the buffers and rotating the log holds the write lock
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<String, LongAdder> plays = new ConcurrentHashMap<>();
+    private Map<String, LongAdder> shares = new ConcurrentHashMap<>();
+    /**
+     * null if the log can't be written, counts are only kept in memory then
+     */
+    private CounterLog log = new CounterLog(LOG_FILE);
+
+    /**
+     * Counts taken from the buffers (or replayed) that are not in the database yet: userId -> {plays, shares}
+     */
+    private final Map<String, long[]> pending = new HashMap<>();
+    /**
+     * Rotated log files containing exactly the pending counts
+     */
+    private final List<File> pendingFiles = new ArrayList<>();
+    private long flushes;
+    private long failedFlushes;
+    private long flushedEvents;
+    private double lastFlushMillis;
+
+    @PostConstruct
+    public void init() {
+        try {
+            pendingFiles.addAll(log.replay(this::replayed));
+            log.open();
+        } catch (IOException e) {
+            System.err.println("Opening the counter log failed, counts are only kept in memory: " + e.getLocalizedMessage());
+            log = null;
+        }
+    }
+
+    /**
+     * flushes the remaining counts
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        try {
+            if (log != null)
+                log.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param userId ID of the user whose music was played
+     */
+    public void recordPlay(String userId) {
+        long time = System.currentTimeMillis();
+        record(userId, CounterLog.PLAY, time);
+        trending.record(userId, TrendingIndex.PLAY_WEIGHT, time);
+    }
+
+    /**
+     * @param userId ID of the user whose music was shared
+     */
+    public void recordShare(String userId) {
+        long time = System.currentTimeMillis();
+        record(userId, CounterLog.SHARE, time);
+        trending.record(userId, TrendingIndex.SHARE_WEIGHT, time);
+    }
+
+    private void record(String userId, char type, long time) {
+        lock.readLock().lock();
+        try {
+            (type == CounterLog.PLAY ? plays : shares).computeIfAbsent(userId, id -> new LongAdder()).increment();
+            if (log != null)
+                log.append(type, userId, time);
+        } catch (IOException e) {
+            System.err.println("Appending to the counter log failed: " + e.getLocalizedMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the counts of the user that are not in the database yet, has to be called before the counts of the user
+     * are reset in the database (the user answered the questions again). Waits for a running flush.
+     */
+    public synchronized void reset(String userId) {
+        lock.writeLock().lock();
+        try {
+            plays.remove(userId);
+            shares.remove(userId);
+            if (log != null)
+                log.append(CounterLog.RESET, userId, System.currentTimeMillis());
+        } catch (IOException e) {
+            System.err.println("Appending to the counter log failed: " + e.getLocalizedMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        pending.remove(userId);
+        trending.reset(userId);
+    }
+
+    /**
+     * Adds the buffered counts to the database and updates the feeds with the new counts.
+     * Counts of a failed flush stay pending and are added with the next one.
+     */
+    @Schedule(second = "*/5", minute = "*", hour = "*", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED) // addCounts() has to commit before the logs are deleted
+    public synchronized void flush() {
+        Map<String, LongAdder> flushedPlays;
+        Map<String, LongAdder> flushedShares;
+        lock.writeLock().lock();
+        try {
+            if (plays.isEmpty() && shares.isEmpty() && pending.isEmpty() && pendingFiles.isEmpty())
+                return;
+            flushedPlays = plays;
+            flushedShares = shares;
+            plays = new ConcurrentHashMap<>();
+            shares = new ConcurrentHashMap<>();
+            rotate();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        flushedPlays.forEach((userId, count) -> add(userId, count.sum(), 0));
+        flushedShares.forEach((userId, count) -> add(userId, 0, count.sum()));
+        long start = System.nanoTime();
+        try {
+            userManager.addCounts(pending);
+        } catch (RuntimeException e) {
+            failedFlushes++;
+            System.err.println("Flushing the counters of " + pending.size() + " users failed: " + e.getLocalizedMessage());
+            return;
+        }
+        lastFlushMillis = (System.nanoTime() - start) / 1e6;
+        flushes++;
+
+        List<String> flushed = new ArrayList<>(pending.keySet());
+        for (long[] counts : pending.values())
+            flushedEvents += counts[0] + counts[1];
+        for (File file : pendingFiles)
+            if (!file.delete())
+                System.err.println("Deleting the flushed counter log " + file + " failed");
+        pending.clear();
+        pendingFiles.clear();
+
+        try {
+            for (User user : userManager.retrieveByIds(flushed))
+                feeds.update(user);
+        } catch (RuntimeException e) {
+            System.err.println("Updating the feeds failed: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @return number of users with counts that are not in the database yet, number and duration of the flushes
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        Set<String> users = new HashSet<>(pending.keySet());
+        lock.readLock().lock();
+        try {
+            users.addAll(plays.keySet());
+            users.addAll(shares.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("pendingUsers", users.size());
+        statistics.put("flushes", flushes);
+        statistics.put("failedFlushes", failedFlushes);
+        statistics.put("flushedEvents", flushedEvents);
+        statistics.put("lastFlushMillis", lastFlushMillis);
+        return statistics;
+    }
+
+    private void add(String userId, long playCount, long shareCount) {
+        long[] counts = pending.computeIfAbsent(userId, id -> new long[2]);
+        counts[0] += playCount;
+        counts[1] += shareCount;
+    }
+
+    /**
+     * Event of a log left over by the last run
+     */
+    private void replayed(char type, String userId, long time) {
+        switch (type) {
+            case CounterLog.PLAY:
+                add(userId, 1, 0);
+                trending.record(userId, TrendingIndex.PLAY_WEIGHT, time);
+                break;
+            case CounterLog.SHARE:
+                add(userId, 0, 1);
+                trending.record(userId, TrendingIndex.SHARE_WEIGHT, time);
+                break;
+            case CounterLog.RESET:
+                pending.remove(userId);
+                trending.reset(userId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Moves the current log aside (it belongs to the pending counts now) and starts a new one.
+     * Has to be called with the write lock.
+     */
+    private void rotate() {
+        if (log == null)
+            return;
+        try {
+            File rotated = log.rotate();
+            if (rotated != null)
+                pendingFiles.add(rotated);
+        } catch (IOException e) {
+            System.err.println("Rotating the counter log failed, counts are only kept in memory: " + e.getLocalizedMessage());
+            log = null;
+        }
+    }
+}
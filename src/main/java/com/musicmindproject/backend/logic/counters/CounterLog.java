@@ -0,0 +1,122 @@
+package com.musicmindproject.backend.logic.counters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of the events counted by the CounterBuffer, one line per event: type, userId and time in
+ * milliseconds (tab separated). rotate() moves the log aside, so the events of a flush can be deleted once they are
+ * in the database; replay() reads the files left over by a crash in the order they were written.
+ * append() may be called concurrently, but not while the log is rotated.
+ */
+public class CounterLog {
+    public static final char PLAY = 'P';
+    public static final char SHARE = 'S';
+    /**
+     * The counts of the user were reset, earlier events of the user don't count
+     */
+    public static final char RESET = 'R';
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final File file;
+    private volatile FileChannel channel;
+
+    @FunctionalInterface
+    public interface Listener {
+        void event(char type, String userId, long time);
+    }
+
+    public CounterLog(File file) {
+        this.file = file.getAbsoluteFile();
+    }
+
+    public void open() throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    public void append(char type, String userId, long time) throws IOException {
+        FileChannel current = channel;
+        if (current == null)
+            throw new IOException(file + " is not open");
+        // appends of concurrent writers don't interleave
+        current.write(ByteBuffer.wrap((type + "\t" + userId + "\t" + time + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Moves the log aside and starts a new one
+     * @return the file containing the events appended so far, null if there were none
+     */
+    public File rotate() throws IOException {
+        close();
+        File rotated = null;
+        if (file.length() > 0)
+            rotated = moveAside();
+        else
+            Files.deleteIfExists(file.toPath());
+        open();
+        return rotated;
+    }
+
+    public void close() throws IOException {
+        FileChannel current = channel;
+        channel = null;
+        if (current != null)
+            current.close();
+    }
+
+    /**
+     * Reads the logs left over by the previous run: the rotated ones in the order they were written, then the log
+     * itself (which is moved aside). Lines that were torn by a crash are skipped.
+     * @return the files that were read, they have to be deleted once their events are in the database
+     */
+    public List<File> replay(Listener listener) throws IOException {
+        String prefix = file.getName() + ".";
+        File[] rotated = file.getParentFile().listFiles((dir, name) -> name.startsWith(prefix));
+        List<File> files = new ArrayList<>();
+        if (rotated != null) {
+            Arrays.sort(rotated, Comparator.comparing(File::getName));
+            files.addAll(Arrays.asList(rotated));
+        }
+        if (file.isFile())
+            files.add(moveAside());
+
+        for (File replayed : files) {
+            String content = new String(Files.readAllBytes(replayed.toPath()), StandardCharsets.UTF_8);
+            int end = content.lastIndexOf('\n'); // everything after the last line break is torn
+            if (end < 0)
+                continue;
+            for (String line : content.substring(0, end).split("\n")) {
+                String[] fields = line.split("\t");
+                if (fields.length != 3 || fields[0].length() != 1 || fields[1].isEmpty())
+                    continue;
+                try {
+                    listener.event(fields[0].charAt(0), fields[1], Long.parseLong(fields[2]));
+                } catch (NumberFormatException torn) {
+                    // skipped
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return the new name of the log, names of rotated logs sort in the order they were written
+     */
+    private File moveAside() throws IOException {
+        File rotated = new File(String.format("%s.%013d-%06d", file.getPath(), System.currentTimeMillis(), SEQUENCE.incrementAndGet() % 1000000));
+        Files.move(file.toPath(), rotated.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return rotated;
+    }
+}
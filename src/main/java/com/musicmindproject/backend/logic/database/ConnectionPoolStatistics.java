@@ -0,0 +1,103 @@
+package com.musicmindproject.backend.logic.database;
+
+import com.musicmindproject.backend.logic.Settings;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects usage statistics of the connection pool of the application server. SINGLETON
+ * Active connections and wait times are measured by the application itself, the number of idle connections
+ * is read from the statistics the server publishes via JMX (if enabled for the datasource).
+ */
+public final class ConnectionPoolStatistics {
+    private static final ConnectionPoolStatistics instance = new ConnectionPoolStatistics();
+
+    public static ConnectionPoolStatistics getInstance() {
+        return instance;
+    }
+
+    private final String poolObjectName = String.format("jboss.as:subsystem=datasources,data-source=%s,statistics=pool",
+            Settings.getString("datasource.name", "MusicMindDB"));
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private ConnectionPoolStatistics() {
+    }
+
+    /**
+     * Borrows a connection from the pool and keeps track of it until it is closed
+     * @param dataSource pooled datasource of the application server
+     * @return connection that is returned to the pool on close()
+     */
+    Connection borrow(DataSource dataSource) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = dataSource.getConnection();
+        long wait = System.nanoTime() - start;
+
+        borrowed.incrementAndGet();
+        totalWaitNanos.addAndGet(wait);
+        maxWaitNanos.accumulateAndGet(wait, Math::max);
+        active.incrementAndGet();
+
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if (method.getName().equals("close") && closed.compareAndSet(false, true))
+                active.decrementAndGet();
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * @return number of idle connections in the pool or -1 if the server does not publish pool statistics
+     */
+    public int getIdle() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            return ((Number) server.getAttribute(new ObjectName(poolObjectName), "AvailableCount")).intValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    public double getAverageWaitMillis() {
+        long count = borrowed.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get() / count) / 1000.0;
+    }
+
+    public double getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()) / 1000.0;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("active", getActive());
+        statistics.put("idle", getIdle());
+        statistics.put("borrowed", borrowed.get());
+        statistics.put("averageWaitMillis", getAverageWaitMillis());
+        statistics.put("maxWaitMillis", getMaxWaitMillis());
+        return statistics;
+    }
+}
@@ -1,20 +1,56 @@
 package com.musicmindproject.backend.logic.database;
 
+import javax.annotation.Resource;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.List;
 
 @Stateless
 public abstract class DatabaseManager<T> {
-    static final String CONNECTION_STRING = "jdbc:mysql://musicmindproject.com/MusicMindDB";
-    static final String USER = "root";
-    static final String PASSWORD = "G6GzwxHT";
     @PersistenceContext
     EntityManager entityManager;
+    @Resource(lookup = "java:/MusicMindDB")
+    DataSource dataSource;
+    @Resource
+    TransactionSynchronizationRegistry transactions;
 
     DatabaseManager(){}
 
+    /**
+     * @return a connection of the pool of the application server, has to be closed after usage
+     */
+    Connection getConnection() throws SQLException {
+        return ConnectionPoolStatistics.getInstance().borrow(dataSource);
+    }
+
+    /**
+     * Runs the update after the current transaction was committed (right away if there is no transaction)
+     */
+    public void afterCommit(Runnable update) {
+        if (transactions.getTransactionStatus() == Status.STATUS_NO_TRANSACTION) {
+            update.run();
+            return;
+        }
+        transactions.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED)
+                    update.run();
+            }
+        });
+    }
+
     public abstract T store(T item);
     public abstract T retrieve(Object id);
     public abstract List<T> retrieveMany(int min, int max, String query);
@@ -0,0 +1,74 @@
+package com.musicmindproject.backend.logic.database;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Immutable snapshot of the factors (weights) of all questions for every personality category.
+ * The version is derived from the factors themselves, so equal factors always have the same version,
+ * across restarts and across nodes.
+ */
+public final class FactorSnapshot {
+    public static final FactorSnapshot EMPTY = new FactorSnapshot(new double[5][0]);
+
+    private final double[][] factors;
+    private final String version;
+    private final long loadedAt;
+
+    /**
+     * @param factors Every double[] contains the factors of one category, in the order
+     *                NEUROTICISM, CONSCIENTIOUSNESS, AGREEABLENESS, EXTRAVERSION, OPENNESS
+     */
+    public FactorSnapshot(double[][] factors) {
+        this.factors = new double[factors.length][];
+        for (int type = 0; type < factors.length; type++)
+            this.factors[type] = factors[type].clone();
+        this.version = computeVersion(this.factors);
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    private static String computeVersion(double[][] factors) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES);
+            for (double[] category : factors) {
+                for (double factor : category) {
+                    buffer.clear();
+                    digest.update(buffer.putDouble(factor).array());
+                }
+            }
+            StringBuilder version = new StringBuilder();
+            byte[] hash = digest.digest();
+            for (int i = 0; i < 8; i++)
+                version.append(String.format("%02x", hash[i]));
+            return version.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param type personality category (see constructor for the order)
+     * @param question index of the question
+     * @return factor of the question for the given category
+     */
+    public double getFactor(int type, int question) {
+        return factors[type][question];
+    }
+
+    /**
+     * @return number of questions that are answered with a value (the last question asks for the name)
+     */
+    public int getNumberOfAnswers() {
+        return factors[0].length;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+}
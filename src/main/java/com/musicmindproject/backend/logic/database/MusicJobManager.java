@@ -0,0 +1,41 @@
+package com.musicmindproject.backend.logic.database;
+
+import com.musicmindproject.backend.entities.MusicJob;
+
+import javax.ejb.Stateless;
+import java.sql.Timestamp;
+import java.util.List;
+
+@Stateless
+public class MusicJobManager extends DatabaseManager<MusicJob> {
+    @Override
+    public MusicJob store(MusicJob item) {
+        return entityManager.merge(item);
+    }
+
+    @Override
+    public MusicJob retrieve(Object id) {
+        return entityManager.find(MusicJob.class, id);
+    }
+
+    /**
+     * @param query
+     * Fixed Keywords:
+     * - unfinished: jobs that are neither done nor failed, oldest first
+     * @return List of Jobs
+     */
+    @Override
+    public List<MusicJob> retrieveMany(int min, int max, String query) {
+        if(query.equals("unfinished"))
+            return entityManager.createNamedQuery("MusicJob.unfinished", MusicJob.class).setFirstResult(min).setMaxResults(max - min).getResultList();
+        return null;
+    }
+
+    /**
+     * @param before point in time
+     * @return number of finished jobs that were removed because they were last touched before the given time
+     */
+    public int removeFinished(Timestamp before) {
+        return entityManager.createNamedQuery("MusicJob.removeFinished").setParameter("before", before).executeUpdate();
+    }
+}
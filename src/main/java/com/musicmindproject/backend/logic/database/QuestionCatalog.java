@@ -0,0 +1,128 @@
+package com.musicmindproject.backend.logic.database;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Immutable snapshot of all question texts in every language and of the question factors stored in the QUESTION table.
+ * Languages are derived from the TEXT_* columns (e.g. TEXT_ENGLISH -> en, TEXT_GERMAN -> de).
+ */
+public final class QuestionCatalog {
+    public static final String DEFAULT_LANGUAGE = "en";
+    public static final QuestionCatalog EMPTY = new QuestionCatalog(new int[0], Collections.emptyMap(), FactorSnapshot.EMPTY);
+
+    private static final String TEXT_COLUMN_PREFIX = "TEXT_";
+
+    private static final String[] FACTOR_COLUMNS = {"NEUROTICISM", "CONSCIENTIOUSNESS", "AGREEABLENESS", "EXTRAVERSION", "OPENNESS"};
+
+    private final int[] ids;
+    private final Map<String, List<String>> texts;
+    private final FactorSnapshot factors;
+
+    private QuestionCatalog(int[] ids, Map<String, List<String>> texts, FactorSnapshot factors) {
+        this.ids = ids;
+        this.texts = texts;
+        this.factors = factors;
+    }
+
+    /**
+     * @param rs result of a query over all columns of the QUESTION table, ordered by QUESTIONID
+     * @return catalog containing every row of the result
+     */
+    static QuestionCatalog of(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        Map<String, String> columnsByLanguage = new LinkedHashMap<>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            String column = metaData.getColumnLabel(i).toUpperCase();
+            if (column.startsWith(TEXT_COLUMN_PREFIX))
+                columnsByLanguage.put(toLanguageCode(column.substring(TEXT_COLUMN_PREFIX.length())), column);
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        List<double[]> factorRows = new ArrayList<>();
+        Map<String, List<String>> texts = new HashMap<>();
+        columnsByLanguage.keySet().forEach(lang -> texts.put(lang, new ArrayList<>()));
+        while (rs.next()) {
+            ids.add(rs.getInt("QUESTIONID"));
+            for (Map.Entry<String, String> column : columnsByLanguage.entrySet())
+                texts.get(column.getKey()).add(rs.getString(column.getValue()));
+            double[] factorRow = new double[FACTOR_COLUMNS.length];
+            for (int type = 0; type < FACTOR_COLUMNS.length; type++)
+                factorRow[type] = rs.getDouble(FACTOR_COLUMNS[type]);
+            factorRows.add(factorRow);
+        }
+
+        //the last question asks for the name, only questions with an id lower than that are answered with a value
+        int numberOfAnswers = Math.max(ids.size() - 1, 0);
+        double[][] factors = new double[FACTOR_COLUMNS.length][numberOfAnswers];
+        for (int row = 0, question = 0; row < ids.size() && question < numberOfAnswers; row++) {
+            if (ids.get(row) >= numberOfAnswers)
+                continue;
+            for (int type = 0; type < FACTOR_COLUMNS.length; type++)
+                factors[type][question] = factorRows.get(row)[type];
+            question++;
+        }
+
+        Map<String, List<String>> immutableTexts = new HashMap<>();
+        texts.forEach((lang, list) -> immutableTexts.put(lang, Collections.unmodifiableList(list)));
+        return new QuestionCatalog(ids.stream().mapToInt(Integer::intValue).toArray(), Collections.unmodifiableMap(immutableTexts), new FactorSnapshot(factors));
+    }
+
+    /**
+     * @param language english name of the language, e.g. GERMAN
+     * @return ISO 639 code of the language, or the lower case name if the language is unknown
+     */
+    private static String toLanguageCode(String language) {
+        for (String code : Locale.getISOLanguages()) {
+            if (new Locale(code).getDisplayLanguage(Locale.ENGLISH).equalsIgnoreCase(language))
+                return code;
+        }
+        return language.toLowerCase();
+    }
+
+    public int getNumberOfQuestions() {
+        return ids.length;
+    }
+
+    public Set<String> getLanguages() {
+        return texts.keySet();
+    }
+
+    /**
+     * @param id Id of the question in the database
+     * @param lang language of the question, falls back to english if the language is not available
+     * @return The text of the wanted question or null if there is no question with the given id
+     */
+    public String getText(int id, String lang) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0)
+            return null;
+        List<String> localized = getTexts(lang);
+        return localized.isEmpty() ? null : localized.get(index);
+    }
+
+    /**
+     * @param lang language of the questions, falls back to english if the language is not available
+     * @return texts of all questions ordered by their id
+     */
+    public List<String> getTexts(String lang) {
+        List<String> localized = texts.get(lang == null ? DEFAULT_LANGUAGE : lang.toLowerCase());
+        if (localized == null)
+            localized = texts.getOrDefault(DEFAULT_LANGUAGE, Collections.emptyList());
+        return localized;
+    }
+
+    public FactorSnapshot getFactors() {
+        return factors;
+    }
+
+    /**
+     * @param index position of the question when ordered by id
+     * @return the id of the question
+     */
+    public int getId(int index) {
+        return ids[index];
+    }
+}
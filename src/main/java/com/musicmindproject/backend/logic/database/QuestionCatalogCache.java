@@ -0,0 +1,73 @@
+package com.musicmindproject.backend.logic.database;
+
+import com.musicmindproject.backend.logic.Settings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.*;
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the current QuestionCatalog and FactorSnapshot in memory, so questions can be served and answers
+ * evaluated without a database round trip.
+ * The catalog is reloaded every musicmind.questions.refreshSeconds seconds (0 disables the refresh) or by calling reload().
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class QuestionCatalogCache {
+    private static final long REFRESH_SECONDS = Settings.getLong("questions.refreshSeconds", 300);
+
+    @Inject
+    private QuestionManager questionManager;
+    @Resource
+    private TimerService timerService;
+
+    private volatile QuestionCatalog catalog = QuestionCatalog.EMPTY;
+    private volatile FactorSnapshot factorSnapshot = FactorSnapshot.EMPTY;
+
+    @PostConstruct
+    public void init() {
+        reload();
+        if (REFRESH_SECONDS > 0) {
+            long interval = TimeUnit.SECONDS.toMillis(REFRESH_SECONDS);
+            timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+        }
+    }
+
+    @Timeout
+    public void refresh() {
+        reload();
+    }
+
+    /**
+     * Loads all questions from the database and replaces the current catalog.
+     * The factor snapshot is only replaced if the factors changed, so its version stays the same otherwise.
+     * @return true if the catalog was loaded successfully
+     */
+    public boolean reload() {
+        QuestionCatalog loaded = questionManager.loadCatalog();
+        if (loaded == null)
+            return false;
+        catalog = loaded;
+
+        FactorSnapshot loadedFactors = loaded.getFactors();
+        if (!loadedFactors.getVersion().equals(factorSnapshot.getVersion())) {
+            System.out.println("Factors changed from version " + factorSnapshot.getVersion() + " to " + loadedFactors.getVersion());
+            factorSnapshot = loadedFactors;
+        }
+        return true;
+    }
+
+    public QuestionCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @return the factors shared by all evaluations
+     */
+    public FactorSnapshot getFactorSnapshot() {
+        return factorSnapshot;
+    }
+}
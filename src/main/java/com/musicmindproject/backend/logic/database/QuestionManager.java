@@ -1,56 +1,40 @@
 package com.musicmindproject.backend.logic.database;
 
 import javax.ejb.Stateless;
+import javax.inject.Inject;
 import java.sql.*;
 import java.util.List;
 
 /**
- * Provides access to the MySql-Database. SINGLETON
+ * Provides access to the questions stored in the MySql-Database.
+ * Question texts and factors are served from the in-memory QuestionCatalogCache.
+ * Connections are borrowed from the pool of the application server (java:/MusicMindDB),
+ * prepared statements are cached by the pool.
  */
 
 @Stateless
 public class QuestionManager extends DatabaseManager<String>{
 
+    @Inject
+    private QuestionCatalogCache catalogCache;
+
     /**
      *
-     * @return Returns the total number of stored questions from the database.
+     * @return Returns the total number of stored questions (from the in-memory catalog), -1 if the questions could not be loaded.
      */
     public int getNumberOfAvailableQuestions(){
-        try(Connection connection = DriverManager.getConnection(CONNECTION_STRING, USER, PASSWORD)){
-            ResultSet rs = connection.prepareStatement("SELECT COUNT(QUESTIONID) AS COUNTER FROM QUESTION").executeQuery();
-
-            if(rs.next())
-                return rs.getInt("COUNTER");
-            return -1;
-        } catch (SQLException e) {
-            System.err.println(e.getLocalizedMessage());
-            return -1;
-        }
+        int numberOfQuestions = catalogCache.getCatalog().getNumberOfQuestions();
+        return numberOfQuestions == 0 ? -1 : numberOfQuestions;
     }
 
     /**
-     * @return Every double[] contains 5 values for each category, the total length of the array is the total number of questions.
+     * @return All questions in all languages from the database, null if an error occurred
      */
-    public double[][] getFactors(){
-        try(Connection connection = DriverManager.getConnection(CONNECTION_STRING, USER, PASSWORD)){
-            PreparedStatement ps = connection.prepareStatement("SELECT EXTRAVERSION, NEUROTICISM, OPENNESS, AGREEABLENESS, CONSCIENTIOUSNESS FROM QUESTION WHERE QUESTIONID < ? ORDER BY QUESTIONID");
-
-            ps.setInt(1, getNumberOfAvailableQuestions() - 1);
-
-            ResultSet rs = ps.executeQuery();
-
-            double[][] factors = new double[5][getNumberOfAvailableQuestions() - 1];
-            int row = 0;
-            while(rs.next()){
-                factors[0][row] = rs.getDouble("NEUROTICISM");
-                factors[1][row] = rs.getDouble("CONSCIENTIOUSNESS");
-                factors[2][row] = rs.getDouble("AGREEABLENESS");
-                factors[3][row] = rs.getDouble("EXTRAVERSION");
-                factors[4][row] = rs.getDouble("OPENNESS");
-                row++;
-            }
-
-            return factors;
+    public QuestionCatalog loadCatalog(){
+        try(Connection connection = getConnection();
+            PreparedStatement stmt = connection.prepareStatement("SELECT * FROM QUESTION ORDER BY QUESTIONID");
+            ResultSet rs = stmt.executeQuery()){
+            return QuestionCatalog.of(rs);
         } catch (SQLException e) {
             System.err.println(e.getLocalizedMessage());
             return null;
@@ -65,35 +49,35 @@ public class QuestionManager extends DatabaseManager<String>{
 
     /**
      * @param id Id of the question in the database
-     * @return The text of the wanted question in the given language
+     * @return The english text of the wanted question
      */
     @Override
     public String retrieve(Object id) {
-        if((int)id > getNumberOfAvailableQuestions())
-            return "Question does not exist...";
-
-        try (Connection connection = DriverManager.getConnection(CONNECTION_STRING, USER, PASSWORD)){
-            PreparedStatement stmt = connection.prepareStatement("SELECT TEXT_ENGLISH FROM QUESTION WHERE QUESTIONID = ?");
-
-            stmt.setInt(1, (int)id);
-
-            ResultSet rs = stmt.executeQuery();
-            if(rs.next())
-                return rs.getString("TEXT_ENGLISH");
-            return "";
-        } catch (SQLException e) {
-            System.err.println(e.getLocalizedMessage());
-            return "";
-        }
+        return retrieve(id, QuestionCatalog.DEFAULT_LANGUAGE);
     }
 
+    /**
+     * @param query language of the questions
+     * @return The texts of the questions between min and max (ordered by id) in the given language
+     */
     @Override
     public List<String> retrieveMany(int min, int max, String query) {
-        return null;
+        List<String> texts = catalogCache.getCatalog().getTexts(query);
+        int from = Math.min(Math.max(min, 0), texts.size());
+        return texts.subList(from, Math.min(Math.max(max, from), texts.size()));
     }
 
+    /**
+     * @param id Id of the question in the database
+     * @param lang language of the question, english is used if the language is not available
+     * @return The text of the wanted question in the given language
+     */
     public String retrieve(Object id, String lang){
-        //TODO translate
-        return retrieve(id);
+        QuestionCatalog catalog = catalogCache.getCatalog();
+        if((int)id > catalog.getNumberOfQuestions())
+            return "Question does not exist...";
+
+        String text = catalog.getText((int)id, lang);
+        return text == null ? "" : text;
     }
 }
@@ -1,15 +1,47 @@
 package com.musicmindproject.backend.logic.database;
 
 import com.musicmindproject.backend.entities.User;
+import com.musicmindproject.backend.logic.ranking.ExploreCursor;
+import com.musicmindproject.backend.logic.ranking.ExplorePage;
+import com.musicmindproject.backend.logic.ranking.RankedFeed;
+import com.musicmindproject.backend.logic.ranking.TrendingIndex;
+import com.musicmindproject.backend.logic.ranking.UserFeeds;
+import com.musicmindproject.backend.logic.search.NameIndex;
 
 import javax.ejb.Stateless;
+import javax.inject.Inject;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Stateless
 public class UserManager extends DatabaseManager<User> {
+    @Inject
+    private UserFeeds feeds;
+    @Inject
+    private TrendingIndex trending;
+    @Inject
+    private NameIndex names;
+
+    /**
+     * Feeds and name index are updated once the transaction is committed, a rollback leaves them unchanged
+     */
     @Override
     public User store(User item) {
-        return entityManager.merge(item);
+        User user = entityManager.merge(item);
+        User stored = new User(user);
+        afterCommit(() -> {
+            feeds.update(stored);
+            names.update(stored);
+        });
+        return user;
     }
 
     @Override
@@ -22,17 +54,192 @@ public class UserManager extends DatabaseManager<User> {
      * Fixed Keywords:
      * - newest
      * - hottest
-     * - everything else: name of the user / music-track
+     * - trending (plays and shares, recent ones count more, see TrendingIndex)
+     * - everything else: name of the user / music-track, most relevant first (see NameIndex)
      * @param min
-     * Ignore
+     * first position of the page
      * @param max
-     * Ignore
-     * @return List of Users
+     * position after the last one of the page
+     * @return List of Users, hottest and newest are served from the UserFeeds if the page is in memory
      */
     @Override
     public List<User> retrieveMany(int min, int max, String query) {
-        if(query.equals("hottest") || query.equals("newest"))
-            return entityManager.createNamedQuery("User." + query, User.class).setFirstResult(min).setMaxResults(max - min).getResultList();
-        return entityManager.createNamedQuery("User.getByName", User.class).setParameter("uName", "%" + query + "%").getResultList();
+        if(query.equals("hottest") || query.equals("newest")) {
+            List<User> page = feeds.page(query, min, max);
+            return page != null ? page : retrieveRanked(min, max, query);
+        }
+        if(query.equals("trending"))
+            return retrieveByIds(trending.page(min, max));
+        return retrieveByIds(names.search(query, min, max));
+    }
+
+    /**
+     * @param query hottest or newest
+     * @return the users between min and max of the ranking, read from the database
+     */
+    public List<User> retrieveRanked(int min, int max, String query) {
+        return entityManager.createNamedQuery("User." + query, User.class).setFirstResult(min).setMaxResults(max - min).getResultList();
+    }
+
+    /**
+     * Keyset pagination: the page starts right after the cursor instead of skipping rows, so every page costs the
+     * same and doesn't shift when the ranking changes between requests.
+     * @param query same keywords as retrieveMany()
+     * @param cursor next cursor of the previous page, null for the first page
+     * @param limit maximal number of users of the page
+     * @return the users after the cursor, hottest and newest are served from the UserFeeds if the page is in memory
+     * @throws IllegalArgumentException if the cursor doesn't belong to the query
+     */
+    public ExplorePage retrieveAfter(String query, ExploreCursor cursor, int limit) {
+        if(query.equals("hottest") || query.equals("newest")) {
+            List<User> page = cursor == null
+                    ? feeds.page(query, 0, limit)
+                    : feeds.after(query, new RankedFeed.Entry(cursor.getLongKey(), cursor.getUserId()), limit);
+            if (page == null)
+                page = cursor == null ? retrieveRanked(0, limit, query) : retrieveRankedAfter(query, cursor, limit);
+            if (page.size() < limit)
+                return new ExplorePage(page, null);
+            User last = page.get(page.size() - 1);
+            return new ExplorePage(page, ExploreCursor.of(query.equals("hottest") ? last.getPlays() : UserFeeds.creationOf(last), last.getUserId()));
+        }
+        if(query.equals("trending")) {
+            List<String> userIds = cursor == null
+                    ? trending.page(0, limit)
+                    : trending.after(cursor.getDoubleKey(), cursor.getUserId(), limit);
+            if (userIds.size() < limit)
+                return new ExplorePage(retrieveByIds(userIds), null);
+            String last = userIds.get(userIds.size() - 1);
+            return new ExplorePage(retrieveByIds(userIds), ExploreCursor.of(trending.getRankingScore(last), last));
+        }
+        List<NameIndex.Match> matches = cursor == null
+                ? names.searchAfter(query, null, null, limit)
+                : names.searchAfter(query, cursor.getKey(), cursor.getUserId(), limit);
+        List<String> userIds = new ArrayList<>(matches.size());
+        for (NameIndex.Match match : matches)
+            userIds.add(match.getUserId());
+        if (matches.size() < limit)
+            return new ExplorePage(retrieveByIds(userIds), null);
+        NameIndex.Match last = matches.get(matches.size() - 1);
+        return new ExplorePage(retrieveByIds(userIds), new ExploreCursor(last.getKey(), last.getUserId()));
+    }
+
+    /**
+     * @param query hottest or newest
+     * @return the limit users ranked after the cursor, read from the database (range predicate on the sort key)
+     */
+    private List<User> retrieveRankedAfter(String query, ExploreCursor cursor, int limit) {
+        if (query.equals("hottest"))
+            return entityManager.createNamedQuery("User.hottestAfter", User.class)
+                    .setParameter("plays", (int) cursor.getLongKey())
+                    .setParameter("userId", cursor.getUserId())
+                    .setMaxResults(limit).getResultList();
+        return entityManager.createNamedQuery("User.newestAfter", User.class)
+                .setParameter("created", new Timestamp(cursor.getLongKey()))
+                .setParameter("userId", cursor.getUserId())
+                .setMaxResults(limit).getResultList();
+    }
+
+    /**
+     * @param filename name of the users files (without extension)
+     * @return the user the files belong to, null if there is none
+     */
+    public User retrieveByFilename(String filename) {
+        List<User> users = entityManager.createNamedQuery("User.getByFilename", User.class).setParameter("filename", filename).setMaxResults(1).getResultList();
+        return users.isEmpty() ? null : users.get(0);
+    }
+
+    /**
+     * @param userIds IDs of the users
+     * @return the users in the order of the IDs
+     */
+    public List<User> retrieveByIds(List<String> userIds) {
+        if (userIds.isEmpty())
+            return new ArrayList<>();
+        Map<String, User> users = new HashMap<>();
+        for (User user : entityManager.createNamedQuery("User.getByIds", User.class).setParameter("ids", userIds).getResultList())
+            users.put(user.getUserId(), user);
+        List<User> ordered = new ArrayList<>(userIds.size());
+        for (String userId : userIds)
+            if (users.containsKey(userId))
+                ordered.add(users.get(userId));
+        return ordered;
+    }
+
+    /**
+     * Adds plays and shares with one batched statement, the rows are not read (see CounterBuffer).
+     * The trending score of the users (TrendingIndex.getRankingScore()) is stored with the counts, the index is seeded
+     * with it at startup.
+     * Runs in one transaction: nothing is added if it fails.
+     * @param counts userId -> {plays, shares}
+     * @throws IllegalStateException if the database could not be updated
+     */
+    public void addCounts(Map<String, long[]> counts) {
+        if (counts.isEmpty())
+            return;
+        try(Connection connection = getConnection();
+            PreparedStatement stmt = connection.prepareStatement("UPDATE USER SET PLAYS = PLAYS + ?, SHARES = SHARES + ?, TRENDING_SCORE = ? WHERE USERID = ?")){
+            for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+                double score = trending.getRankingScore(entry.getKey());
+                stmt.setLong(1, entry.getValue()[0]);
+                stmt.setLong(2, entry.getValue()[1]);
+                if (Double.isNaN(score))
+                    stmt.setNull(3, Types.DOUBLE);
+                else
+                    stmt.setDouble(3, score);
+                stmt.setString(4, entry.getKey());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } catch (SQLException e) {
+            // unchecked, so the container rolls the transaction back
+            throw new IllegalStateException("Adding the counts failed", e);
+        }
+    }
+
+    /**
+     * Sets plays and shares of the user to 0 and removes the trending score (the counters are not written by store())
+     * @param userId ID of the user
+     * @throws IllegalStateException if the database could not be updated
+     */
+    public void resetCounts(String userId) {
+        try(Connection connection = getConnection();
+            PreparedStatement stmt = connection.prepareStatement("UPDATE USER SET PLAYS = 0, SHARES = 0, TRENDING_SCORE = NULL WHERE USERID = ?")){
+            stmt.setString(1, userId);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Resetting the counts failed", e);
+        }
+    }
+
+    /**
+     * @return userId, userName and filename of every user
+     */
+    public List<Object[]> retrieveNames() {
+        return entityManager.createNamedQuery("User.names", Object[].class).getResultList();
+    }
+
+    /**
+     * @return userId, plays, shares and dateOfCreation of every user that was played or shared
+     */
+    public List<Object[]> retrieveActivity() {
+        return entityManager.createNamedQuery("User.activity", Object[].class).getResultList();
+    }
+
+    /**
+     * The column is not mapped by the entity (it would be sent to the clients with the user)
+     * @return userId -> trending score stored by addCounts(), users without a stored score are missing
+     * @throws IllegalStateException if the scores could not be read
+     */
+    public Map<String, Double> retrieveTrendingScores() {
+        Map<String, Double> scores = new HashMap<>();
+        try(Connection connection = getConnection();
+            PreparedStatement stmt = connection.prepareStatement("SELECT USERID, TRENDING_SCORE FROM USER WHERE TRENDING_SCORE IS NOT NULL");
+            ResultSet rs = stmt.executeQuery()){
+            while (rs.next())
+                scores.put(rs.getString(1), rs.getDouble(2));
+        } catch (SQLException e) {
+            throw new IllegalStateException("Reading the trending scores failed", e);
+        }
+        return scores;
     }
 }
@@ -0,0 +1,138 @@
+package com.musicmindproject.backend.logic.images;
+
+import com.musicmindproject.backend.logic.Settings;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Renders the personality image (five bars between two icons each).
+ * The icons and bar borders are the same for every user, they are rendered once into a base raster. Per image the
+ * base raster is copied into a buffer of the current thread and only the bar fills are drawn, so rendering an image
+ * allocates no raster. PNGs are written by a PngEncoder per thread, its compression can be tuned with
+ * musicmind.images.pngLevel (deflate level 0 - 9) and musicmind.images.pngSubFilter.
+ */
+public class PersonalityImageRenderer {
+    public static final int TOP = 110;
+    public static final int BETWEEN = 35;
+    public static final int SIDE = 100;
+
+    public static final int IMAGE_WIDTH = 1280;
+    public static final int IMAGE_HEIGHT = 720;
+
+    public static final int BORDER_WIDTH = 4;
+
+    public static final int BAR_WIDTH = IMAGE_WIDTH - (2 * SIDE + 2 * BORDER_WIDTH);
+    public static final int BAR_HEIGHT = (IMAGE_HEIGHT - (2 * TOP + 10 * BORDER_WIDTH + 4 * BETWEEN)) / 5;
+
+    public static final Color[] PERSONALITY_COLORS = {
+            Color.decode("#29B765"),
+            Color.decode("#EEC20F"),
+            Color.decode("#E74C3C"),
+            Color.decode("#9B59B6"),
+            Color.decode("#3498DB")
+    };
+    public static final Color BORDER_COLOR = Color.decode("#FFFFFF");
+
+    public static final String ICON_DIRECTORY = "/mnt/personality_images/icons";
+    /**
+     * Names of the icons, left and right icon of every bar
+     */
+    public static final String[] ICON_NAMES = {
+            "star", "star_border",
+            "shuffle", "list",
+            "person", "person_add",
+            "lock_outline", "lock_open",
+            "mood", "mood_bad"
+    };
+
+    private static final int PNG_LEVEL = Settings.getInt("images.pngLevel", 1);
+    private static final boolean PNG_SUB_FILTER = Boolean.parseBoolean(Settings.getString("images.pngSubFilter", "true"));
+
+    private final int[] base;
+    private final int iconSize;
+    private final ThreadLocal<BufferedImage> buffers = ThreadLocal.withInitial(() -> new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB));
+    private final ThreadLocal<PngEncoder> encoders = ThreadLocal.withInitial(() -> new PngEncoder(PNG_LEVEL, PNG_SUB_FILTER));
+
+    /**
+     * @param icons the icons in the order of ICON_NAMES
+     */
+    public PersonalityImageRenderer(BufferedImage[] icons) {
+        BufferedImage baseImage = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphic2D = baseImage.createGraphics();
+        iconSize = icons[0].getHeight();
+        graphic2D.setStroke(new BasicStroke(BORDER_WIDTH));
+        graphic2D.setPaint(BORDER_COLOR);
+        for (int i = 0; i < PERSONALITY_COLORS.length; i++) {
+            int rightIconX = (SIDE - iconSize) / 2;
+            int leftIconX = IMAGE_WIDTH - (rightIconX + iconSize);
+            int iconY = (TOP + i * (BORDER_WIDTH + BAR_HEIGHT + BETWEEN)) + (BAR_HEIGHT - iconSize) / 2;
+            int barBorderY = TOP + i * (BORDER_WIDTH + BAR_HEIGHT + BETWEEN);
+
+            graphic2D.drawImage(icons[i * 2], rightIconX, iconY, null);
+            graphic2D.drawRect(SIDE, barBorderY, BAR_WIDTH + BORDER_WIDTH, BAR_HEIGHT + BORDER_WIDTH);
+            graphic2D.drawImage(icons[i * 2 + 1], leftIconX, iconY, null);
+        }
+        graphic2D.dispose();
+        base = ((DataBufferInt) baseImage.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * @return renderer with the icons from ICON_DIRECTORY
+     */
+    public static PersonalityImageRenderer fromIconDirectory() throws IOException {
+        BufferedImage[] icons = new BufferedImage[ICON_NAMES.length];
+        for (int i = 0; i < icons.length; i++) {
+            icons[i] = ImageIO.read(new File(ICON_DIRECTORY, ICON_NAMES[i] + ".png"));
+            if (icons[i] == null)
+                throw new IOException("Can't read icon " + ICON_NAMES[i]);
+        }
+        return new PersonalityImageRenderer(icons);
+    }
+
+    public int getIconSize() {
+        return iconSize;
+    }
+
+    /**
+     * @param values openness, conscientiousness, extraversion, agreeableness and neuroticism (0 - 100)
+     * @return the image, it belongs to the current thread and is overwritten by the next call of the thread
+     */
+    public BufferedImage render(double[] values) {
+        BufferedImage image = buffers.get();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(base, 0, pixels, 0, base.length);
+
+        for (int i = 0; i < PERSONALITY_COLORS.length; i++) {
+            int barX = SIDE + BORDER_WIDTH / 2;
+            int barY = TOP + BORDER_WIDTH / 2 + i * (BORDER_WIDTH + BAR_HEIGHT + BETWEEN);
+            int barWidth = Math.max(0, Math.min((int) (BAR_WIDTH * (values[i] / 100)), IMAGE_WIDTH - barX));
+            int color = PERSONALITY_COLORS[i].getRGB();
+            for (int y = barY; y < barY + BAR_HEIGHT; y++)
+                Arrays.fill(pixels, y * IMAGE_WIDTH + barX, y * IMAGE_WIDTH + barX + barWidth, color);
+        }
+        return image;
+    }
+
+    /**
+     * Renders the image and writes it as PNG, the file appears only once it is complete
+     * @param values see render()
+     * @param output the png-file
+     */
+    public void writePng(double[] values, File output) throws IOException {
+        // unique per call: concurrent requests for the same image must not write into the same file
+        File part = new File(output.getAbsolutePath() + "." + UUID.randomUUID() + ".part");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(part), 64 * 1024)) {
+            encoders.get().write(render(values), out);
+        }
+        if (!part.renameTo(output)) {
+            part.delete();
+            throw new IOException("Can't write " + output);
+        }
+    }
+}
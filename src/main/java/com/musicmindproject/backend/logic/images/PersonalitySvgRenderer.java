@@ -0,0 +1,93 @@
+package com.musicmindproject.backend.logic.images;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.UUID;
+
+import static com.musicmindproject.backend.logic.images.PersonalityImageRenderer.*;
+
+/**
+ * Renders the personality image as SVG with the same layout as the PersonalityImageRenderer.
+ * The icons are embedded once as symbols, the part that is the same for every user is built once.
+ */
+public class PersonalitySvgRenderer {
+    private final String head;
+
+    /**
+     * @param icons the png-files of the icons in the order of ICON_NAMES
+     * @param iconSize width and height of the icons
+     */
+    public PersonalitySvgRenderer(byte[][] icons, int iconSize) {
+        StringBuilder svg = new StringBuilder();
+        svg.append(String.format("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" viewBox=\"0 0 %d %d\" width=\"%d\" height=\"%d\">",
+                IMAGE_WIDTH, IMAGE_HEIGHT, IMAGE_WIDTH, IMAGE_HEIGHT));
+        svg.append("<defs>");
+        for (int i = 0; i < icons.length; i++)
+            svg.append(String.format("<symbol id=\"%s\" viewBox=\"0 0 %d %d\"><image width=\"%d\" height=\"%d\" xlink:href=\"data:image/png;base64,%s\"/></symbol>",
+                    ICON_NAMES[i], iconSize, iconSize, iconSize, iconSize, Base64.getEncoder().encodeToString(icons[i])));
+        svg.append("</defs>");
+        svg.append(String.format("<rect width=\"%d\" height=\"%d\"/>", IMAGE_WIDTH, IMAGE_HEIGHT));
+        svg.append(String.format("<g fill=\"none\" stroke=\"%s\" stroke-width=\"%d\">", hex(BORDER_COLOR), BORDER_WIDTH));
+        for (int i = 0; i < PERSONALITY_COLORS.length; i++)
+            svg.append(String.format("<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\"/>",
+                    SIDE, barBorderY(i), BAR_WIDTH + BORDER_WIDTH, BAR_HEIGHT + BORDER_WIDTH));
+        svg.append("</g>");
+        for (int i = 0; i < PERSONALITY_COLORS.length; i++) {
+            int rightIconX = (SIDE - iconSize) / 2;
+            int leftIconX = IMAGE_WIDTH - (rightIconX + iconSize);
+            int iconY = barBorderY(i) + (BAR_HEIGHT - iconSize) / 2;
+            svg.append(String.format("<use xlink:href=\"#%s\" x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\"/>", ICON_NAMES[i * 2], rightIconX, iconY, iconSize, iconSize));
+            svg.append(String.format("<use xlink:href=\"#%s\" x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\"/>", ICON_NAMES[i * 2 + 1], leftIconX, iconY, iconSize, iconSize));
+        }
+        head = svg.toString();
+    }
+
+    /**
+     * @return renderer with the icons from ICON_DIRECTORY
+     */
+    public static PersonalitySvgRenderer fromIconDirectory(int iconSize) throws IOException {
+        byte[][] icons = new byte[ICON_NAMES.length][];
+        for (int i = 0; i < icons.length; i++)
+            icons[i] = Files.readAllBytes(new File(ICON_DIRECTORY, ICON_NAMES[i] + ".png").toPath());
+        return new PersonalitySvgRenderer(icons, iconSize);
+    }
+
+    private static int barBorderY(int i) {
+        return TOP + i * (BORDER_WIDTH + BAR_HEIGHT + BETWEEN);
+    }
+
+    private static String hex(Color color) {
+        return String.format("#%06X", color.getRGB() & 0xffffff);
+    }
+
+    /**
+     * @param values openness, conscientiousness, extraversion, agreeableness and neuroticism (0 - 100)
+     * @return the svg-document
+     */
+    public String render(double[] values) {
+        StringBuilder svg = new StringBuilder(head.length() + 512).append(head);
+        for (int i = 0; i < PERSONALITY_COLORS.length; i++) {
+            int barWidth = Math.max(0, (int) (BAR_WIDTH * (values[i] / 100)));
+            svg.append(String.format("<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" fill=\"%s\"/>",
+                    SIDE + BORDER_WIDTH / 2, barBorderY(i) + BORDER_WIDTH / 2, barWidth, BAR_HEIGHT, hex(PERSONALITY_COLORS[i])));
+        }
+        return svg.append("</svg>").toString();
+    }
+
+    /**
+     * Renders the svg-document and writes it, the file appears only once it is complete
+     */
+    public void writeSvg(double[] values, File output) throws IOException {
+        // unique per call: concurrent requests for the same image must not write into the same file
+        File part = new File(output.getAbsolutePath() + "." + UUID.randomUUID() + ".part");
+        Files.write(part.toPath(), render(values).getBytes(StandardCharsets.UTF_8));
+        if (!part.renameTo(output)) {
+            part.delete();
+            throw new IOException("Can't write " + output);
+        }
+    }
+}
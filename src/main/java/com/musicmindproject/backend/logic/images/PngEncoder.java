@@ -0,0 +1,118 @@
+package com.musicmindproject.backend.logic.images;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes TYPE_INT_RGB images as 8 bit RGB PNGs. The deflate level and the row filter can be chosen; buffers and the
+ * Deflater are reused, so an instance must only be used by one thread at a time.
+ */
+public class PngEncoder {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] IHDR = "IHDR".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IDAT = "IDAT".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IEND = "IEND".getBytes(StandardCharsets.US_ASCII);
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Deflater deflater;
+    private final int filter;
+    private final CRC32 crc = new CRC32();
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final byte[] header = new byte[13];
+    private final byte[] integer = new byte[4];
+    private byte[] row = new byte[0];
+
+    /**
+     * @param level deflate level (0 - 9), lower levels are faster and produce bigger files
+     * @param subFilter true to store the difference to the left pixel (smaller files for images with large flat areas)
+     */
+    public PngEncoder(int level, boolean subFilter) {
+        this.deflater = new Deflater(Math.max(0, Math.min(level, 9)));
+        this.filter = subFilter ? FILTER_SUB : FILTER_NONE;
+    }
+
+    public void write(BufferedImage image, OutputStream out) throws IOException {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB)
+            throw new IllegalArgumentException("Only TYPE_INT_RGB images are supported");
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        if (row.length != 1 + width * 3)
+            row = new byte[1 + width * 3];
+
+        out.write(SIGNATURE);
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // bit depth
+        header[9] = 2; // truecolour
+        header[10] = header[11] = header[12] = 0; // deflate, adaptive filtering, no interlace
+        writeChunk(out, IHDR, header, header.length);
+
+        deflater.reset();
+        int chunkLength = 0;
+        for (int y = 0; y < height; y++) {
+            encodeRow(pixels, y * width, width);
+            deflater.setInput(row);
+            while (!deflater.needsInput()) {
+                chunkLength += deflater.deflate(chunk, chunkLength, CHUNK_SIZE - chunkLength);
+                if (chunkLength == CHUNK_SIZE) {
+                    writeChunk(out, IDAT, chunk, chunkLength);
+                    chunkLength = 0;
+                }
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            chunkLength += deflater.deflate(chunk, chunkLength, CHUNK_SIZE - chunkLength);
+            if (chunkLength == CHUNK_SIZE || deflater.finished()) {
+                writeChunk(out, IDAT, chunk, chunkLength);
+                chunkLength = 0;
+            }
+        }
+        writeChunk(out, IEND, chunk, 0);
+    }
+
+    private void encodeRow(int[] pixels, int offset, int width) {
+        row[0] = (byte) filter;
+        int previous = 0;
+        for (int x = 0, i = 1; x < width; x++, i += 3) {
+            int pixel = pixels[offset + x];
+            if (filter == FILTER_SUB) {
+                row[i] = (byte) ((pixel >> 16) - (previous >> 16));
+                row[i + 1] = (byte) ((pixel >> 8) - (previous >> 8));
+                row[i + 2] = (byte) (pixel - previous);
+                previous = pixel;
+            } else {
+                row[i] = (byte) (pixel >> 16);
+                row[i + 1] = (byte) (pixel >> 8);
+                row[i + 2] = (byte) pixel;
+            }
+        }
+    }
+
+    private void writeChunk(OutputStream out, byte[] type, byte[] data, int length) throws IOException {
+        putInt(integer, 0, length);
+        out.write(integer);
+        out.write(type);
+        out.write(data, 0, length);
+        crc.reset();
+        crc.update(type);
+        crc.update(data, 0, length);
+        putInt(integer, 0, (int) crc.getValue());
+        out.write(integer);
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,67 @@
+package com.musicmindproject.backend.logic.media;
+
+/**
+ * A single range of a HTTP Range header (RFC 7233), multiple ranges are not supported
+ */
+public final class ByteRange {
+    private final long first;
+    private final long last;
+
+    public ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * @param header value of the Range header, may be null
+     * @param length length of the file
+     * @return the requested range, the whole file if the header is missing or not understood (the header may be
+     * ignored), null if the range can't be satisfied
+     */
+    public static ByteRange parse(String header, long length) {
+        ByteRange whole = new ByteRange(0, length - 1);
+        if (header == null || !header.startsWith("bytes=") || header.contains(","))
+            return whole;
+
+        String range = header.substring("bytes=".length()).trim();
+        int dash = range.indexOf('-');
+        if (dash < 0)
+            return whole;
+        try {
+            String start = range.substring(0, dash).trim();
+            String end = range.substring(dash + 1).trim();
+            if (start.isEmpty()) {
+                long suffix = Long.parseLong(end);
+                if (suffix <= 0 || length == 0)
+                    return null;
+                return new ByteRange(Math.max(length - suffix, 0), length - 1);
+            }
+            long first = Long.parseLong(start);
+            long last = end.isEmpty() ? length - 1 : Math.min(Long.parseLong(end), length - 1);
+            if (first >= length || first > last)
+                return null;
+            return new ByteRange(first, last);
+        } catch (NumberFormatException e) {
+            return whole;
+        }
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    public long getLength() {
+        return last - first + 1;
+    }
+
+    /**
+     * @return value of the Content-Range header for a file with the given length
+     */
+    public String toContentRange(long length) {
+        return String.format("bytes %d-%d/%d", first, last, length);
+    }
+}
@@ -0,0 +1,55 @@
+package com.musicmindproject.backend.logic.media;
+
+import com.musicmindproject.backend.logic.Settings;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed number of direct buffers (musicmind.media.buffers of musicmind.media.bufferKb each) used to send media files,
+ * the off-heap memory used for serving files is bounded by their total size. Buffers are allocated on first use.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DirectBufferPool {
+    private static final int BUFFERS = Settings.getInt("media.buffers", 32);
+    private static final int BUFFER_SIZE = Settings.getInt("media.bufferKb", 64) * 1024;
+    private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+
+    private final BlockingQueue<ByteBuffer> available = new ArrayBlockingQueue<>(BUFFERS);
+    private int allocated;
+
+    /**
+     * Blocks until a buffer is available
+     * @return a cleared buffer, has to be handed back with release()
+     * @throws IOException if no buffer became available within 30 seconds
+     * @throws InterruptedException if the waiting thread was interrupted
+     */
+    public ByteBuffer acquire() throws IOException, InterruptedException {
+        ByteBuffer buffer = available.poll();
+        if (buffer == null) {
+            synchronized (this) {
+                if (allocated < BUFFERS) {
+                    allocated++;
+                    return ByteBuffer.allocateDirect(BUFFER_SIZE);
+                }
+            }
+            buffer = available.poll(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (buffer == null)
+                throw new IOException("No buffer available after " + ACQUIRE_TIMEOUT_SECONDS + " seconds");
+        }
+        ((Buffer) buffer).clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        available.offer(buffer);
+    }
+}
@@ -0,0 +1,38 @@
+package com.musicmindproject.backend.logic.process;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keeps the last bytes written to it, so a chatty process can't fill the memory
+ */
+class BoundedOutput extends OutputStream {
+    private final byte[] buffer;
+    private long written;
+
+    BoundedOutput(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        buffer[(int) (written++ % buffer.length)] = (byte) b;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        for (int i = 0; i < len; i++)
+            write(b[off + i]);
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (written <= buffer.length)
+            return new String(buffer, 0, (int) written, StandardCharsets.UTF_8);
+        int start = (int) (written % buffer.length);
+        byte[] ordered = new byte[buffer.length];
+        System.arraycopy(buffer, start, ordered, 0, buffer.length - start);
+        System.arraycopy(buffer, 0, ordered, buffer.length - start, start);
+        return new String(ordered, StandardCharsets.UTF_8);
+    }
+}
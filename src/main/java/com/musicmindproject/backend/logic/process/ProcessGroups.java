@@ -0,0 +1,49 @@
+package com.musicmindproject.backend.logic.process;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kills whole process groups. Processes started with setsid lead their own group (group ID = process ID), so the
+ * children of a wrapper script are killed with it.
+ */
+final class ProcessGroups {
+    private ProcessGroups() {
+    }
+
+    /**
+     * Sends SIGKILL to the process group led by the process, nothing happens if its ID is not available
+     */
+    static void kill(Process process) {
+        long pid = pidOf(process);
+        if (pid <= 0)
+            return;
+        try {
+            new ProcessBuilder("kill", "-KILL", "--", "-" + pid).start().waitFor(5, TimeUnit.SECONDS);
+        } catch (IOException e) {
+            System.err.println("Killing the process group " + pid + " failed: " + e.getLocalizedMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return ID of the process (Process.pid() on Java 9+, the pid field of UNIXProcess on Java 8), -1 if unknown
+     */
+    static long pidOf(Process process) {
+        try {
+            return ((Number) Process.class.getMethod("pid").invoke(process)).longValue();
+        } catch (NoSuchMethodException e) {
+            try {
+                Field pid = process.getClass().getDeclaredField("pid");
+                pid.setAccessible(true);
+                return pid.getInt(process);
+            } catch (ReflectiveOperationException | RuntimeException unknown) {
+                return -1;
+            }
+        } catch (ReflectiveOperationException | RuntimeException unknown) {
+            return -1; // e.g. processes that are not started by the system
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.musicmindproject.backend.logic.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Starts the process of a tool, ProcessRunner.setLauncher() replaces the real tool (e.g. by a fake for tests and
+ * benchmarks on machines without ffmpeg)
+ */
+@FunctionalInterface
+public interface ProcessLauncher {
+    ProcessLauncher SYSTEM = (command, directory) -> new ProcessBuilder(command).directory(directory).start();
+
+    /**
+     * @param command the command and its arguments
+     * @param directory working directory, null for the working directory of the server
+     */
+    Process launch(List<String> command, File directory) throws IOException;
+}
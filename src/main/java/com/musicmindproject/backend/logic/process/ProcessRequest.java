@@ -0,0 +1,138 @@
+package com.musicmindproject.backend.logic.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An external process to run with the ProcessRunner. stdout is captured unless output() is set, stdin is closed
+ * right away unless input() is set.
+ */
+public class ProcessRequest {
+    private final String tool;
+    private final List<String> command;
+    private File directory;
+    private long timeoutMillis;
+    private StreamWriter input;
+    private OutputStream output;
+    private boolean processGroup;
+    private volatile Process process;
+    private volatile boolean cancelled;
+
+    /**
+     * @param tool name of the tool (concurrency limit, timeout and metrics are per tool)
+     * @param command the command and its arguments
+     */
+    public ProcessRequest(String tool, String... command) {
+        this.tool = tool;
+        this.command = Collections.unmodifiableList(Arrays.asList(command));
+    }
+
+    public ProcessRequest directory(File directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    /**
+     * Overrides musicmind.process.[tool].timeoutSeconds
+     */
+    public ProcessRequest timeout(long timeout, TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * @param input writes the stdin of the process (on a thread of the ProcessRunner), stdin is closed afterwards
+     */
+    public ProcessRequest input(StreamWriter input) {
+        this.input = input;
+        return this;
+    }
+
+    /**
+     * @param output receives stdout while the process is running (it is not closed)
+     */
+    public ProcessRequest output(OutputStream output) {
+        this.output = output;
+        return this;
+    }
+
+    /**
+     * Runs the command in its own process group (setsid): on a timeout or cancellation the whole group is killed,
+     * not only the command (e.g. a wrapper script whose children would keep running)
+     */
+    public ProcessRequest processGroup() {
+        this.processGroup = true;
+        return this;
+    }
+
+    public String getTool() {
+        return tool;
+    }
+
+    /**
+     * @return the command and its arguments, prefixed with setsid if the command runs in its own process group
+     */
+    public List<String> getCommand() {
+        if (!processGroup)
+            return command;
+        List<String> grouped = new ArrayList<>(command.size() + 1);
+        grouped.add("setsid");
+        grouped.addAll(command);
+        return Collections.unmodifiableList(grouped);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public StreamWriter getInput() {
+        return input;
+    }
+
+    public OutputStream getOutput() {
+        return output;
+    }
+
+    synchronized void started(Process process) {
+        this.process = process;
+        if (cancelled)
+            kill(process);
+    }
+
+    /**
+     * Kills the process (if it was started already, otherwise it is not started)
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if (process != null)
+            kill(process);
+    }
+
+    /**
+     * Kills the process and, if it runs in its own process group, its children
+     */
+    void kill(Process process) {
+        if (processGroup)
+            ProcessGroups.kill(process);
+        process.destroyForcibly();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @FunctionalInterface
+    public interface StreamWriter {
+        void write(OutputStream stdin) throws IOException;
+    }
+}
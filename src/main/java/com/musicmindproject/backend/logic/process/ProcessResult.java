@@ -0,0 +1,45 @@
+package com.musicmindproject.backend.logic.process;
+
+/**
+ * Exit code and captured output of a finished process (output is only captured if the request had no output stream,
+ * at most the last ProcessRunner.CAPTURE_BYTES are kept)
+ */
+public class ProcessResult {
+    private final String tool;
+    private final int exitCode;
+    private final String output;
+    private final String errorOutput;
+    private final long millis;
+
+    ProcessResult(String tool, int exitCode, String output, String errorOutput, long millis) {
+        this.tool = tool;
+        this.exitCode = exitCode;
+        this.output = output;
+        this.errorOutput = errorOutput;
+        this.millis = millis;
+    }
+
+    public String getTool() {
+        return tool;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public boolean isSuccess() {
+        return exitCode == 0;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public String getErrorOutput() {
+        return errorOutput;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+}
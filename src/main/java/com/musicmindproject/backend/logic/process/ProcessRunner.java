@@ -0,0 +1,274 @@
+package com.musicmindproject.backend.logic.process;
+
+import com.musicmindproject.backend.logic.Settings;
+
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs every external process of the backend (ffmpeg, timidity, lame, magenta...).
+ * Per tool at most musicmind.process.[tool].concurrency processes run at the same time, a process is killed after
+ * musicmind.process.[tool].timeoutSeconds (with its process group, see ProcessRequest.processGroup()). stdout and stderr are always drained, so a process can't block on a full pipe.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ProcessRunner {
+    static final int CAPTURE_BYTES = 64 * 1024;
+    private static final int DEFAULT_CONCURRENCY = Runtime.getRuntime().availableProcessors();
+    private static final long DEFAULT_TIMEOUT_SECONDS = 600;
+    /**
+     * Time the output is drained after the process exited (children of the process may keep the pipe open)
+     */
+    private static final long DRAIN_SECONDS = 10;
+    private static final int PIPE_BYTES = 256 * 1024;
+
+    private final ExecutorService executor;
+    private final Map<String, Semaphore> limits = new ConcurrentHashMap<>();
+    private final Map<String, ProcessLauncher> launchers = new ConcurrentHashMap<>();
+    private final Map<String, ToolStatistics> statistics = new ConcurrentHashMap<>();
+    private final Map<Process, ProcessRequest> running = new ConcurrentHashMap<>();
+
+    public ProcessRunner() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "process-runner-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param tool name of the tool
+     * @param launcher starts the processes of the tool instead of the real tool, null to use the real one again
+     */
+    public void setLauncher(String tool, ProcessLauncher launcher) {
+        if (launcher == null)
+            launchers.remove(tool);
+        else
+            launchers.put(tool, launcher);
+    }
+
+    /**
+     * @return the result of the process, completes exceptionally with a TimeoutException if the process was killed
+     * after its timeout, with an IOException if it could not be started or its input or output failed
+     */
+    public CompletableFuture<ProcessResult> run(ProcessRequest request) {
+        return CompletableFuture.supplyAsync(() -> execute(request), executor);
+    }
+
+    /**
+     * Runs the process and waits for it, the process is killed if the waiting thread is interrupted
+     * @return the result of the process
+     * @throws IOException if the process failed (exit code other than 0, timeout, failed input or output)
+     */
+    public ProcessResult runAndWait(ProcessRequest request) throws IOException, InterruptedException {
+        return waitFor(request, run(request));
+    }
+
+    /**
+     * Runs two processes with stdout of the source as stdin of the sink (like a shell pipe, but the exit codes of
+     * both are checked) and waits for them. Both are killed if one of them fails or the waiting thread is interrupted.
+     * @return the result of the sink
+     * @throws IOException if one of the processes failed (exit code other than 0, timeout, failed input or output)
+     */
+    public ProcessResult pipeAndWait(ProcessRequest source, ProcessRequest sink) throws IOException, InterruptedException {
+        PipedInputStream pipeIn = new PipedInputStream(PIPE_BYTES);
+        PipedOutputStream pipeOut = new PipedOutputStream(pipeIn);
+        source.output(pipeOut);
+        sink.input(stdin -> {
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = pipeIn.read(buffer)) != -1)
+                stdin.write(buffer, 0, read);
+        });
+        // the sink reads to the end once the source is finished, the source fails writing once the sink is finished
+        CompletableFuture<ProcessResult> sourceResult = run(source).whenComplete((result, e) -> closeQuietly(pipeOut));
+        CompletableFuture<ProcessResult> sinkResult = run(sink).whenComplete((result, e) -> closeQuietly(pipeIn));
+        try {
+            waitFor(source, sourceResult);
+            return waitFor(sink, sinkResult);
+        } catch (IOException | InterruptedException e) {
+            source.cancel();
+            sink.cancel();
+            throw e;
+        }
+    }
+
+    private ProcessResult waitFor(ProcessRequest request, CompletableFuture<ProcessResult> result) throws IOException, InterruptedException {
+        try {
+            ProcessResult finished = result.get();
+            if (!finished.isSuccess())
+                throw new IOException(String.format("%s exited with %d: %s", request.getTool(), finished.getExitCode(), finished.getErrorOutput().trim()));
+            return finished;
+        } catch (InterruptedException e) {
+            request.cancel();
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(request.getTool() + " failed", e.getCause());
+        }
+    }
+
+    private ProcessResult execute(ProcessRequest request) {
+        String tool = request.getTool();
+        ToolStatistics toolStatistics = getToolStatistics(tool);
+        Semaphore limit = limits.computeIfAbsent(tool, name -> new Semaphore(Settings.getInt("process." + name + ".concurrency", DEFAULT_CONCURRENCY), true));
+        long timeoutMillis = request.getTimeoutMillis() > 0 ? request.getTimeoutMillis()
+                : TimeUnit.SECONDS.toMillis(Settings.getLong("process." + tool + ".timeoutSeconds", DEFAULT_TIMEOUT_SECONDS));
+
+        toolStatistics.waiting();
+        try {
+            limit.acquire();
+        } catch (InterruptedException e) {
+            toolStatistics.cancelled();
+            throw new CompletionException(e);
+        }
+        if (request.isCancelled()) { // while waiting for the slot
+            toolStatistics.cancelled();
+            limit.release();
+            throw new CompletionException(new IOException(tool + " was cancelled"));
+        }
+        toolStatistics.started();
+        long start = System.nanoTime();
+        Process process = null;
+        Future<?> stdout = null;
+        Future<?> stderr = null;
+        Future<?> stdin = null;
+        try {
+            process = launchers.getOrDefault(tool, ProcessLauncher.SYSTEM).launch(request.getCommand(), request.getDirectory());
+            running.put(process, request);
+            request.started(process);
+
+            BoundedOutput errors = new BoundedOutput(CAPTURE_BYTES);
+            BoundedOutput output = request.getOutput() == null ? new BoundedOutput(CAPTURE_BYTES) : null;
+            stdout = drain(process.getInputStream(), output == null ? request.getOutput() : output);
+            stderr = drain(process.getErrorStream(), errors);
+            Process started = process;
+            stdin = executor.submit(() -> {
+                try (OutputStream in = started.getOutputStream()) {
+                    if (request.getInput() != null)
+                        request.getInput().write(in);
+                }
+                return null;
+            });
+
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                request.kill(process);
+                throw new TimeoutException(String.format("%s was killed after %d ms", tool, timeoutMillis));
+            }
+            if (request.isCancelled())
+                throw new IOException(tool + " was cancelled");
+            await(stdin, process);
+            await(stdout, process);
+            await(stderr, process);
+
+            ProcessResult result = new ProcessResult(tool, process.exitValue(), output == null ? null : output.toString(),
+                    errors.toString(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            toolStatistics.finished(result);
+            return result;
+        } catch (Exception e) {
+            if (process != null) {
+                request.kill(process);
+                abandon(process, stdin, stdout, stderr);
+            }
+            toolStatistics.failed(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), e instanceof TimeoutException);
+            throw new CompletionException(e);
+        } finally {
+            if (process != null)
+                running.remove(process);
+            limit.release();
+        }
+    }
+
+    private Future<?> drain(InputStream in, OutputStream out) {
+        return executor.submit(() -> {
+            try (InputStream stream = in) {
+                byte[] buffer = new byte[16 * 1024];
+                int read;
+                while ((read = stream.read(buffer)) != -1)
+                    out.write(buffer, 0, read);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Waits for a stream of the process to be copied completely
+     */
+    private void await(Future<?> copy, Process process) throws IOException, InterruptedException {
+        try {
+            copy.get(DRAIN_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            process.getInputStream().close();
+            process.getErrorStream().close();
+            copy.cancel(true);
+        }
+    }
+
+    /**
+     * Stops copying the streams of a failed process: nothing is written to the output of the request once the
+     * process was given up (the caller may close it right away)
+     */
+    private void abandon(Process process, Future<?>... copies) {
+        closeQuietly(process.getInputStream());
+        closeQuietly(process.getErrorStream());
+        closeQuietly(process.getOutputStream());
+        for (Future<?> copy : copies) {
+            if (copy == null)
+                continue;
+            try {
+                copy.get(DRAIN_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                copy.cancel(true);
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException e) {
+                // failed because the streams were closed
+            } catch (TimeoutException e) {
+                copy.cancel(true);
+                System.err.println("Copying a stream of " + process + " did not stop");
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public ToolStatistics getToolStatistics(String tool) {
+        return statistics.computeIfAbsent(tool, name -> new ToolStatistics());
+    }
+
+    /**
+     * @return statistics of every tool that was run
+     */
+    public Map<String, ToolStatistics> getStatistics() {
+        return new TreeMap<>(statistics);
+    }
+
+    /**
+     * kills every running process
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        running.forEach((process, request) -> request.kill(process));
+    }
+}
@@ -0,0 +1,83 @@
+package com.musicmindproject.backend.logic.process;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs, exit codes and latency of the processes of one tool
+ */
+public class ToolStatistics {
+    private long runs;
+    private long failures;
+    private long timeouts;
+    private int running;
+    private int waiting;
+    private double averageMillis;
+    private long maxMillis;
+    private final Map<Integer, Long> exitCodes = new TreeMap<>();
+
+    synchronized void waiting() {
+        waiting++;
+    }
+
+    synchronized void started() {
+        waiting--;
+        running++;
+    }
+
+    synchronized void cancelled() {
+        waiting--;
+    }
+
+    synchronized void finished(ProcessResult result) {
+        finished(result.getMillis(), result.isSuccess());
+        exitCodes.merge(result.getExitCode(), 1L, Long::sum);
+    }
+
+    synchronized void failed(long millis, boolean timeout) {
+        finished(millis, false);
+        if (timeout)
+            timeouts++;
+    }
+
+    private void finished(long millis, boolean success) {
+        running--;
+        averageMillis = (averageMillis * runs + millis) / (runs + 1);
+        maxMillis = Math.max(maxMillis, millis);
+        runs++;
+        if (!success)
+            failures++;
+    }
+
+    public synchronized long getRuns() {
+        return runs;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public synchronized long getTimeouts() {
+        return timeouts;
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    public synchronized double getAverageMillis() {
+        return averageMillis;
+    }
+
+    public synchronized long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public synchronized Map<Integer, Long> getExitCodes() {
+        return new TreeMap<>(exitCodes);
+    }
+}
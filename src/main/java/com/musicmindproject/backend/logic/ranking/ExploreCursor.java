@@ -0,0 +1,67 @@
+package com.musicmindproject.backend.logic.ranking;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in an explore ranking: the sort key and userId of the last user of a page (keyset pagination).
+ * The key is the plays (hottest), the creation time in milliseconds (newest), the ranking score (trending) or the
+ * relevance and name of the match (name search, see NameIndex.Match.getKey()).
+ * Sent to the clients as opaque URL-safe string.
+ */
+public final class ExploreCursor {
+    private static final char SEPARATOR = '|';
+
+    private final String key;
+    private final String userId;
+
+    public ExploreCursor(String key, String userId) {
+        this.key = key;
+        this.userId = userId;
+    }
+
+    public static ExploreCursor of(long key, String userId) {
+        return new ExploreCursor(Long.toString(key), userId);
+    }
+
+    public static ExploreCursor of(double key, String userId) {
+        return new ExploreCursor(Double.toString(key), userId);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cursor was not created by encode()
+     */
+    public static ExploreCursor decode(String cursor) {
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = decoded.lastIndexOf(SEPARATOR); // keys may contain names
+        if (separator < 0)
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        return new ExploreCursor(decoded.substring(0, separator), decoded.substring(separator + 1));
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((key + SEPARATOR + userId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the key is not a number
+     */
+    public long getLongKey() {
+        return Long.parseLong(key);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the key is not a number
+     */
+    public double getDoubleKey() {
+        return Double.parseDouble(key);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+}
@@ -0,0 +1,26 @@
+package com.musicmindproject.backend.logic.ranking;
+
+import com.musicmindproject.backend.entities.User;
+
+import java.util.List;
+
+/**
+ * One page of an explore ranking and the cursor of the following page (null if this is the last page)
+ */
+public class ExplorePage {
+    private final List<User> users;
+    private final String next;
+
+    public ExplorePage(List<User> users, ExploreCursor next) {
+        this.users = users;
+        this.next = next == null ? null : next.encode();
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
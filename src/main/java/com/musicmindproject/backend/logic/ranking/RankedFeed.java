@@ -0,0 +1,135 @@
+package com.musicmindproject.backend.logic.ranking;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The top users of a ranking (highest rank first, ties ordered by userId), kept in a skip list.
+ * The feed always contains the true top users of the whole table: a user is only added if it ranks before the last
+ * user of the feed (or if the feed contains every user), a user that drops behind the last one is removed.
+ * Pages that reach beyond the feed can't be answered and have to be read from the database.
+ */
+public class RankedFeed {
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::getRank).reversed().thenComparing(Entry::getUserId);
+
+    private final int capacity;
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * true if the feed contains every user of the table
+     */
+    private volatile boolean complete;
+
+    public RankedFeed(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param top the top users of the table in order
+     * @param complete true if these are all users of the table
+     */
+    public synchronized void rebuild(List<Entry> top, boolean complete) {
+        ranking.clear();
+        entries.clear();
+        for (Entry entry : top) {
+            ranking.add(entry);
+            entries.put(entry.getUserId(), entry);
+        }
+        this.complete = complete;
+        trim();
+    }
+
+    /**
+     * @param userId ID of the user
+     * @param rank the new rank of the user
+     * @return true if the user is in the feed afterwards
+     */
+    public synchronized boolean update(String userId, long rank) {
+        Entry entry = new Entry(rank, userId);
+        Entry old = entries.remove(userId);
+        if (old != null) {
+            ranking.remove(old);
+            if (ORDER.compare(entry, old) <= 0) { // still ahead of every user outside of the feed
+                ranking.add(entry);
+                entries.put(userId, entry);
+                return true;
+            }
+        }
+
+        if (!complete && (ranking.isEmpty() || ORDER.compare(entry, ranking.last()) > 0))
+            return false;
+        ranking.add(entry);
+        entries.put(userId, entry);
+        trim();
+        return entries.containsKey(userId);
+    }
+
+    public synchronized void remove(String userId) {
+        Entry old = entries.remove(userId);
+        if (old != null)
+            ranking.remove(old);
+    }
+
+    private void trim() {
+        while (ranking.size() > capacity) {
+            entries.remove(ranking.pollLast().getUserId());
+            complete = false;
+        }
+    }
+
+    public boolean contains(String userId) {
+        return entries.containsKey(userId);
+    }
+
+    /**
+     * @return the IDs of the users between min and max, null if the page reaches beyond the feed
+     */
+    public List<String> page(int min, int max) {
+        List<String> page = new ArrayList<>(Math.max(0, max - min));
+        int position = 0;
+        for (Entry entry : ranking) {
+            if (position >= max)
+                return page;
+            if (position++ >= min)
+                page.add(entry.getUserId());
+        }
+        return complete || position >= max ? page : null;
+    }
+
+    /**
+     * @param cursor the last entry of the previous page
+     * @return the IDs of the limit users ranked after the cursor, null if the page reaches beyond the feed
+     */
+    public List<String> after(Entry cursor, int limit) {
+        List<String> page = new ArrayList<>(limit);
+        for (Entry entry : ranking.tailSet(cursor, false)) {
+            if (page.size() >= limit)
+                return page;
+            page.add(entry.getUserId());
+        }
+        return complete || page.size() >= limit ? page : null;
+    }
+
+    public int size() {
+        return ranking.size();
+    }
+
+    public static final class Entry {
+        private final long rank;
+        private final String userId;
+
+        public Entry(long rank, String userId) {
+            this.rank = rank;
+            this.userId = userId;
+        }
+
+        public long getRank() {
+            return rank;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.musicmindproject.backend.logic.ranking;
+
+import com.musicmindproject.backend.logic.Settings;
+import com.musicmindproject.backend.logic.database.UserManager;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.inject.Inject;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "trending" ranking: every play and share adds to the score of the user, the contribution halves every
+ * musicmind.trending.halfLifeHours.
+ * The score is kept in log space relative to a fixed epoch (log of sum(weight * e^(lambda * (t - epoch)))), so the
+ * order of the users never changes over time and nothing has to be recomputed: an event only changes the score of
+ * one user (O(log n) in the ordered index).
+ * At startup the index is seeded with the scores stored with the counts (see UserManager.addCounts()), users without
+ * a stored score are estimated from their plays and shares, dated to the creation of the user.
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class TrendingIndex {
+    public static final double PLAY_WEIGHT = 1;
+    public static final double SHARE_WEIGHT = Settings.getDouble("trending.shareWeight", 3);
+    private static final long EPOCH = 1514764800000L; // 2018-01-01T00:00:00Z
+    private static final double LAMBDA = Math.log(2) / TimeUnit.HOURS.toMillis(Settings.getLong("trending.halfLifeHours", 24));
+    private static final Comparator<Entry> ORDER = Comparator.comparingDouble(Entry::getScore).reversed().thenComparing(Entry::getUserId);
+
+    @Inject
+    private UserManager userManager;
+
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        try {
+            Map<String, Double> scores = userManager.retrieveTrendingScores();
+            for (Object[] activity : userManager.retrieveActivity()) {
+                String userId = (String) activity[0];
+                if (scores.containsKey(userId)) {
+                    restore(userId, scores.get(userId));
+                    continue;
+                }
+                long time = activity[3] == null ? EPOCH : ((Timestamp) activity[3]).getTime();
+                record(userId, ((Number) activity[1]).doubleValue() * PLAY_WEIGHT + ((Number) activity[2]).doubleValue() * SHARE_WEIGHT, time);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Seeding the trending index failed: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @param userId ID of the user whose music was played or shared
+     * @param weight PLAY_WEIGHT or SHARE_WEIGHT
+     */
+    public void record(String userId, double weight) {
+        record(userId, weight, System.currentTimeMillis());
+    }
+
+    /**
+     * @param time time of the event in milliseconds
+     */
+    public synchronized void record(String userId, double weight, long time) {
+        if (weight <= 0)
+            return;
+        double contribution = Math.log(weight) + LAMBDA * (time - EPOCH);
+        Entry old = entries.get(userId);
+        double score = contribution;
+        if (old != null) {
+            ranking.remove(old);
+            score = logAddExp(old.getScore(), contribution);
+        }
+        Entry entry = new Entry(score, userId);
+        entries.put(userId, entry);
+        ranking.add(entry);
+    }
+
+    /**
+     * @param score ranking score of the user (see getRankingScore()), replaces the current one
+     */
+    public synchronized void restore(String userId, double score) {
+        Entry old = entries.get(userId);
+        if (old != null)
+            ranking.remove(old);
+        Entry entry = new Entry(score, userId);
+        entries.put(userId, entry);
+        ranking.add(entry);
+    }
+
+    /**
+     * Removes the score of the user (the plays and shares were reset)
+     */
+    public synchronized void reset(String userId) {
+        Entry old = entries.remove(userId);
+        if (old != null)
+            ranking.remove(old);
+    }
+
+    /**
+     * @return log(e^a + e^b) without overflowing
+     */
+    private static double logAddExp(double a, double b) {
+        double max = Math.max(a, b);
+        return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+    }
+
+    /**
+     * @return the IDs of the users between min and max, most trending first
+     */
+    public List<String> page(int min, int max) {
+        List<String> page = new ArrayList<>(Math.max(0, max - min));
+        int position = 0;
+        for (Entry entry : ranking) {
+            if (position >= max)
+                break;
+            if (position++ >= min)
+                page.add(entry.getUserId());
+        }
+        return page;
+    }
+
+    /**
+     * @param score ranking score (see getRankingScore()) of the last user of the previous page
+     * @param userId ID of the last user of the previous page
+     * @return the IDs of the limit users ranked after the cursor
+     */
+    public List<String> after(double score, String userId, int limit) {
+        List<String> page = new ArrayList<>(limit);
+        for (Entry entry : ranking.tailSet(new Entry(score, userId), false)) {
+            if (page.size() >= limit)
+                break;
+            page.add(entry.getUserId());
+        }
+        return page;
+    }
+
+    /**
+     * @return the score the user is ordered by (log space, doesn't change over time), NaN if there were no plays or shares
+     */
+    public double getRankingScore(String userId) {
+        Entry entry = entries.get(userId);
+        return entry == null ? Double.NaN : entry.getScore();
+    }
+
+    /**
+     * @return current (decayed) score of the user, 0 if there were no plays or shares
+     */
+    public double getScore(String userId) {
+        Entry entry = entries.get(userId);
+        return entry == null ? 0 : Math.exp(entry.getScore() - LAMBDA * (System.currentTimeMillis() - EPOCH));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final double score;
+        private final String userId;
+
+        Entry(double score, String userId) {
+            this.score = score;
+            this.userId = userId;
+        }
+
+        double getScore() {
+            return score;
+        }
+
+        String getUserId() {
+            return userId;
+        }
+    }
+}
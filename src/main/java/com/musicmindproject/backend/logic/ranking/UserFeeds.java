@@ -0,0 +1,120 @@
+package com.musicmindproject.backend.logic.ranking;
+
+import com.musicmindproject.backend.entities.User;
+import com.musicmindproject.backend.logic.Settings;
+import com.musicmindproject.backend.logic.database.UserManager;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.*;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory "hottest" (most plays) and "newest" feeds of the top musicmind.feeds.size users, so the explore pages
+ * don't sort the whole USER table. The feeds are updated whenever an user is stored (see UserManager.store()) and
+ * rebuilt from the database at startup and every hour.
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class UserFeeds {
+    private static final int FEED_SIZE = Settings.getInt("feeds.size", 1000);
+
+    @Inject
+    private UserManager userManager;
+
+    private final RankedFeed hottest = new RankedFeed(FEED_SIZE);
+    private final RankedFeed newest = new RankedFeed(FEED_SIZE);
+    /**
+     * Copies of the users that are in at least one feed
+     */
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        rebuild();
+    }
+
+    @Schedule(minute = "0", hour = "*", persistent = false)
+    public synchronized void rebuild() {
+        try {
+            users.clear();
+            rebuild(hottest, userManager.retrieveRanked(0, FEED_SIZE + 1, "hottest"), true);
+            rebuild(newest, userManager.retrieveRanked(0, FEED_SIZE + 1, "newest"), false);
+        } catch (RuntimeException e) {
+            System.err.println("Rebuilding the feeds failed: " + e.getLocalizedMessage());
+        }
+    }
+
+    private void rebuild(RankedFeed feed, List<User> top, boolean byPlays) {
+        boolean complete = top.size() <= FEED_SIZE;
+        List<RankedFeed.Entry> entries = new ArrayList<>(top.size());
+        for (User user : top) {
+            entries.add(new RankedFeed.Entry(byPlays ? user.getPlays() : creationOf(user), user.getUserId()));
+            users.put(user.getUserId(), new User(user));
+        }
+        feed.rebuild(entries, complete);
+    }
+
+    /**
+     * Has to be called whenever an user was stored
+     */
+    public synchronized void update(User user) {
+        boolean inHottest = hottest.update(user.getUserId(), user.getPlays());
+        boolean inNewest = newest.update(user.getUserId(), creationOf(user));
+        if (inHottest || inNewest)
+            users.put(user.getUserId(), new User(user));
+        else
+            users.remove(user.getUserId());
+    }
+
+    /**
+     * @param query hottest or newest
+     * @return the users between min and max, null if the page can't be answered from memory
+     */
+    public List<User> page(String query, int min, int max) {
+        RankedFeed feed = feedOf(query);
+        return feed == null ? null : usersOf(feed.page(min, max));
+    }
+
+    /**
+     * @param query hottest or newest
+     * @param cursor rank and userId of the last user of the previous page
+     * @return the limit users after the cursor, null if the page can't be answered from memory
+     */
+    public List<User> after(String query, RankedFeed.Entry cursor, int limit) {
+        RankedFeed feed = feedOf(query);
+        return feed == null ? null : usersOf(feed.after(cursor, limit));
+    }
+
+    private RankedFeed feedOf(String query) {
+        if (query.equals("hottest"))
+            return hottest;
+        if (query.equals("newest"))
+            return newest;
+        return null;
+    }
+
+    private List<User> usersOf(List<String> userIds) {
+        if (userIds == null)
+            return null;
+        List<User> page = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            User user = users.get(userId);
+            if (user == null) // updated concurrently
+                return null;
+            page.add(user);
+        }
+        return page;
+    }
+
+    /**
+     * @return rank of the user in the newest feed
+     */
+    public static long creationOf(User user) {
+        return user.getDateOfCreation() == null ? 0 : user.getDateOfCreation().getTime();
+    }
+}
@@ -0,0 +1,269 @@
+package com.musicmindproject.backend.logic.search;
+
+import com.musicmindproject.backend.entities.User;
+import com.musicmindproject.backend.logic.database.UserManager;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.inject.Inject;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory search over the names of the users and their music-tracks (filename).
+ * Queries with at least three characters are answered with a trigram index (substring search), shorter queries
+ * match the beginning of a word of the name. Results are ordered by relevance: exact name, name prefix,
+ * start of a word, anywhere in the name, only in the filename; then by name length and name.
+ * The index is loaded at startup and kept in sync by UserManager.store().
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class NameIndex {
+    private static final int GRAM = 3;
+    private static final char SEPARATOR = '\u0000';
+
+    @Inject
+    private UserManager userManager;
+
+    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+    /**
+     * word + SEPARATOR + userId for every word of every name
+     */
+    private final ConcurrentSkipListSet<String> words = new ConcurrentSkipListSet<>();
+
+    @PostConstruct
+    public void init() {
+        try {
+            for (Object[] names : userManager.retrieveNames())
+                update((String) names[0], (String) names[1], (String) names[2]);
+        } catch (RuntimeException e) {
+            System.err.println("Loading the name index failed: " + e.getLocalizedMessage());
+        }
+    }
+
+    public void update(User user) {
+        update(user.getUserId(), user.getUserName(), user.getFilename());
+    }
+
+    public synchronized void update(String userId, String userName, String filename) {
+        Document old = documents.remove(userId);
+        if (old != null) {
+            for (String gram : old.grams()) {
+                Set<String> users = postings.get(gram);
+                if (users != null && users.remove(userId) && users.isEmpty())
+                    postings.remove(gram);
+            }
+            for (String word : old.words())
+                words.remove(word + SEPARATOR + userId);
+        }
+
+        Document document = new Document(userId, userName, filename);
+        documents.put(userId, document);
+        for (String gram : document.grams())
+            postings.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(userId);
+        for (String word : document.words())
+            words.add(word + SEPARATOR + userId);
+    }
+
+    /**
+     * @param query part of the name of the user or the music-track
+     * @return the IDs of the matching users between min and max, most relevant first
+     */
+    public List<String> search(String query, int min, int max) {
+        String normalized = normalize(query).trim();
+        if (normalized.isEmpty() || max <= min)
+            return new ArrayList<>();
+
+        PriorityQueue<Match> best = new PriorityQueue<>(Comparator.reverseOrder());
+        for (String userId : candidates(normalized)) {
+            Document document = documents.get(userId);
+            if (document == null)
+                continue;
+            int tier = document.tier(normalized);
+            if (tier < 0)
+                continue;
+            best.add(new Match(tier, document));
+            if (best.size() > max)
+                best.poll();
+        }
+
+        List<Match> matches = new ArrayList<>(best);
+        Collections.sort(matches);
+        List<String> page = new ArrayList<>();
+        for (int i = Math.max(min, 0); i < matches.size(); i++)
+            page.add(matches.get(i).document.userId);
+        return page;
+    }
+
+    /**
+     * Keyset pagination: continues right after the last match of the previous page, so deep pages cost the same as
+     * the first one and don't shift when other names change
+     * @param query part of the name of the user or the music-track
+     * @param after Match.getKey() of the last match of the previous page, null for the first page
+     * @param afterUserId ID of the user of the last match of the previous page
+     * @return the limit most relevant matches after the given one
+     * @throws IllegalArgumentException if after is not a key of a match
+     */
+    public List<Match> searchAfter(String query, String after, String afterUserId, int limit) {
+        String normalized = normalize(query).trim();
+        if (normalized.isEmpty() || limit <= 0)
+            return new ArrayList<>();
+        Match cursor = after == null ? null : Match.of(after, afterUserId);
+
+        PriorityQueue<Match> best = new PriorityQueue<>(Comparator.reverseOrder());
+        for (String userId : candidates(normalized)) {
+            Document document = documents.get(userId);
+            if (document == null)
+                continue;
+            int tier = document.tier(normalized);
+            if (tier < 0)
+                continue;
+            Match match = new Match(tier, document);
+            if (cursor != null && match.compareTo(cursor) <= 0)
+                continue;
+            best.add(match);
+            if (best.size() > limit)
+                best.poll();
+        }
+
+        List<Match> matches = new ArrayList<>(best);
+        Collections.sort(matches);
+        return matches;
+    }
+
+    private Collection<String> candidates(String query) {
+        if (query.length() < GRAM) {
+            Set<String> users = new LinkedHashSet<>();
+            for (String key : words.subSet(query, query + Character.MAX_VALUE))
+                users.add(key.substring(key.indexOf(SEPARATOR) + 1));
+            return users;
+        }
+
+        List<Set<String>> lists = new ArrayList<>();
+        for (String gram : grams(query)) {
+            Set<String> users = postings.get(gram);
+            if (users == null)
+                return Collections.emptyList();
+            lists.add(users);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        List<String> candidates = new ArrayList<>();
+        for (String userId : lists.get(0)) {
+            boolean all = true;
+            for (int i = 1; i < lists.size() && all; i++)
+                all = lists.get(i).contains(userId);
+            if (all)
+                candidates.add(userId);
+        }
+        return candidates;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++)
+            grams.add(text.substring(i, i + GRAM));
+        return grams;
+    }
+
+    private static final class Document {
+        private final String userId;
+        private final String name;
+        private final String filename;
+
+        Document(String userId, String userName, String filename) {
+            this.userId = userId;
+            this.name = normalize(userName);
+            this.filename = normalize(filename);
+        }
+
+        Set<String> grams() {
+            Set<String> grams = NameIndex.grams(name);
+            grams.addAll(NameIndex.grams(filename));
+            return grams;
+        }
+
+        Set<String> words() {
+            Set<String> words = new HashSet<>();
+            if (!name.isEmpty())
+                words.add(name);
+            for (String word : name.split("[^\\p{L}\\p{N}]+"))
+                if (!word.isEmpty())
+                    words.add(word);
+            return words;
+        }
+
+        /**
+         * @return relevance of the document for the query (lower is better), -1 if it doesn't match
+         */
+        int tier(String query) {
+            if (name.equals(query))
+                return 0;
+            if (name.startsWith(query))
+                return 1;
+            int position = name.indexOf(query);
+            if (position > 0 && !Character.isLetterOrDigit(name.charAt(position - 1)))
+                return 2;
+            if (position > 0)
+                return 3;
+            return filename.contains(query) ? 4 : -1;
+        }
+    }
+
+    /**
+     * A matching user and the position of the match in the relevance order
+     */
+    public static final class Match implements Comparable<Match> {
+        private final int tier;
+        private final Document document;
+
+        Match(int tier, Document document) {
+            this.tier = tier;
+            this.document = document;
+        }
+
+        /**
+         * @param key getKey() of a match
+         */
+        static Match of(String key, String userId) {
+            int separator = key.indexOf(':');
+            if (separator < 0)
+                throw new IllegalArgumentException("Invalid key: " + key);
+            return new Match(Integer.parseInt(key.substring(0, separator)), new Document(userId, key.substring(separator + 1), ""));
+        }
+
+        public String getUserId() {
+            return document.userId;
+        }
+
+        /**
+         * @return relevance and name of the match (everything the order depends on except the userId)
+         */
+        public String getKey() {
+            return tier + ":" + document.name;
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            if (tier != other.tier)
+                return Integer.compare(tier, other.tier);
+            if (document.name.length() != other.document.name.length())
+                return Integer.compare(document.name.length(), other.document.name.length());
+            int byName = document.name.compareTo(other.document.name);
+            return byName != 0 ? byName : document.userId.compareTo(other.document.userId);
+        }
+    }
+}
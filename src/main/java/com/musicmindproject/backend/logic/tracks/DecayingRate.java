@@ -0,0 +1,38 @@
+package com.musicmindproject.backend.logic.tracks;
+
+/**
+ * Exponentially weighted rate of events: every event adds 1/window, the sum decays with exp(-elapsed/window).
+ * The value approximates the number of events per millisecond during the last window.
+ */
+public class DecayingRate {
+    private final double windowMillis;
+    private double rate;
+    private long lastUpdate;
+
+    public DecayingRate(long windowMillis) {
+        this.windowMillis = windowMillis;
+        this.lastUpdate = System.currentTimeMillis();
+    }
+
+    public synchronized void record() {
+        decay(System.currentTimeMillis());
+        rate += 1 / windowMillis;
+    }
+
+    /**
+     * @return events per millisecond
+     */
+    public synchronized double getRatePerMilli() {
+        decay(System.currentTimeMillis());
+        return rate;
+    }
+
+    public double getRatePerHour() {
+        return getRatePerMilli() * 3_600_000;
+    }
+
+    private void decay(long now) {
+        rate *= Math.exp(-(now - lastUpdate) / windowMillis);
+        lastUpdate = now;
+    }
+}
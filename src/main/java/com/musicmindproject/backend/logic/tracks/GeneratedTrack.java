@@ -0,0 +1,96 @@
+package com.musicmindproject.backend.logic.tracks;
+
+import javax.sound.midi.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+
+/**
+ * A MIDI-file generated by magenta together with its metadata
+ */
+public class GeneratedTrack {
+    static final Comparator<GeneratedTrack> BY_TEMPO = Comparator.comparingInt(GeneratedTrack::getBpm).thenComparing(track -> track.getFile().getName());
+
+    static final String MP3_EXTENSION = ".mp3";
+
+    private static final int DEFAULT_BPM = 120;
+    private static final int TEMPO_MESSAGE = 0x51;
+
+    private final File file;
+    private final String folder;
+    private final int bpm;
+    private volatile boolean converted;
+
+    GeneratedTrack(File file, String folder, int bpm) {
+        this.file = file;
+        this.folder = folder;
+        this.bpm = bpm;
+        this.converted = file.getParentFile() != null && getMp3File().isFile();
+    }
+
+    /**
+     * @param file MIDI-file
+     * @return the track with the tempo read from the file
+     * @throws IOException if the file can't be read or is not (yet) a complete MIDI-file
+     */
+    static GeneratedTrack read(File file) throws IOException {
+        try {
+            return new GeneratedTrack(file, file.getParentFile().getName(), readBpm(MidiSystem.getSequence(file)));
+        } catch (InvalidMidiDataException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @param sequence MIDI-sequence
+     * @return tempo of the first tempo change in the sequence, 120 bpm (MIDI default) if there is none
+     */
+    private static int readBpm(Sequence sequence) {
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+                MidiMessage message = track.get(i).getMessage();
+                if (message instanceof MetaMessage && ((MetaMessage) message).getType() == TEMPO_MESSAGE) {
+                    byte[] data = ((MetaMessage) message).getData();
+                    int microsecondsPerQuarter = ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+                    if (microsecondsPerQuarter > 0)
+                        return Math.round(60_000_000f / microsecondsPerQuarter);
+                }
+            }
+        }
+        return DEFAULT_BPM;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return name of the output directory (the magenta run) the track was generated in
+     */
+    public String getFolder() {
+        return folder;
+    }
+
+    public int getBpm() {
+        return bpm;
+    }
+
+    /**
+     * @return the mp3 next to the MIDI-file, which is created by the conversion stage after the generation
+     */
+    public File getMp3File() {
+        String name = file.getName();
+        return new File(file.getParentFile(), name.substring(0, name.lastIndexOf('.')) + MP3_EXTENSION);
+    }
+
+    /**
+     * @return true if the track was already converted to mp3
+     */
+    public boolean isConverted() {
+        return converted;
+    }
+
+    void setConverted(boolean converted) {
+        this.converted = converted;
+    }
+}
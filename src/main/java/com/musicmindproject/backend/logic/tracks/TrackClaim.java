@@ -0,0 +1,128 @@
+package com.musicmindproject.backend.logic.tracks;
+
+import com.musicmindproject.backend.logic.Settings;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.*;
+import java.util.UUID;
+
+/**
+ * Claim of a generated track. Tracks in the output directories pass through three states, every transition is an
+ * atomic rename, so concurrent requests (also on other nodes sharing /mnt) never get the same track:
+ * - available: name.mid
+ * - claimed:   name.mid.claimed-NODE-TIMESTAMP
+ * - consumed:  the claimed file is deleted
+ * Claims that are neither consumed nor released in time are made available again by reclaimStale(). A claim that is
+ * still in use (e.g. converted) is kept alive with refresh().
+ */
+public class TrackClaim {
+    static final String CLAIM_MARKER = ".claimed-";
+
+    private static final String NODE = readNodeName();
+
+    private final File claimedFile;
+    private final File availableFile;
+    private final GeneratedTrack track;
+
+    private TrackClaim(File claimedFile, File availableFile, GeneratedTrack track) {
+        this.claimedFile = claimedFile;
+        this.availableFile = availableFile;
+        this.track = track;
+    }
+
+    private static String readNodeName() {
+        String node = Settings.getString("node.id", null);
+        if (node == null) {
+            try {
+                node = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                node = UUID.randomUUID().toString();
+            }
+        }
+        return node.replace('-', '_');
+    }
+
+    /**
+     * @param track available track
+     * @return the claim, null if the track was claimed by someone else (or does not exist anymore)
+     */
+    static TrackClaim tryClaim(GeneratedTrack track) {
+        File available = track.getFile();
+        File claimed = new File(available.getParentFile(), available.getName() + CLAIM_MARKER + NODE + "-" + System.currentTimeMillis());
+        try {
+            Files.move(available.toPath(), claimed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return new TrackClaim(claimed, available, track);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Can't claim " + available + ": " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Makes claimed files available again whose claim is older than the timeout (claimed or refreshed last)
+     * @param file file in an output directory
+     * @param timeoutMillis maximal age of a claim
+     * @return true if the file was a stale claim and is available again
+     */
+    static boolean reclaimStale(File file, long timeoutMillis) {
+        String name = file.getName();
+        int marker = name.lastIndexOf(CLAIM_MARKER);
+        if (marker < 0)
+            return false;
+        try {
+            long claimedAt = Math.max(Long.parseLong(name.substring(name.lastIndexOf('-') + 1)), file.lastModified());
+            if (System.currentTimeMillis() - claimedAt < timeoutMillis)
+                return false;
+            Files.move(file.toPath(), new File(file.getParentFile(), name.substring(0, marker)).toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (NumberFormatException | IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the claimed MIDI-file (renamed, so its name does not end with .mid)
+     */
+    public File getFile() {
+        return claimedFile;
+    }
+
+    public GeneratedTrack getTrack() {
+        return track;
+    }
+
+    /**
+     * Restarts the timeout of the claim, has to be called regularly while the track is used
+     */
+    public void refresh() {
+        if (!claimedFile.setLastModified(System.currentTimeMillis()))
+            System.err.println("Can't refresh the claim " + claimedFile);
+    }
+
+    /**
+     * The track was used and is removed from the output directory
+     */
+    public void consume() {
+        try {
+            Files.deleteIfExists(claimedFile.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The track could not be used and is made available again
+     */
+    public void release() {
+        try {
+            Files.move(claimedFile.toPath(), availableFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
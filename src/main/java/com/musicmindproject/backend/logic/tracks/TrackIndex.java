@@ -0,0 +1,406 @@
+package com.musicmindproject.backend.logic.tracks;
+
+import com.musicmindproject.backend.entities.enums.MusicGenre;
+import com.musicmindproject.backend.entities.enums.PsychologicalCategory;
+import com.musicmindproject.backend.logic.Settings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * In-memory index of the tracks in /mnt/generated_tracks, grouped by output directory (magenta run) and ordered by tempo.
+ * The index follows the directory through a WatchService. Because file system events are not reliable on network
+ * mounts, the index is additionally reconciled with the directory every musicmind.tracks.reconcileMinutes minutes.
+ * Tracks are handed out through claims (see TrackClaim), so every track is used only once.
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class TrackIndex {
+    public static final String TRACK_DIRECTORY = "/mnt/generated_tracks";
+
+    private static final String MIDI_EXTENSION = ".mid";
+    private static final long RECONCILE_MINUTES = Settings.getLong("tracks.reconcileMinutes", 5);
+    private static final int MAX_BPM = 240;
+    private static final int DEFAULT_BPM = 120;
+    private static final int BPM_TOLERANCE = 5;
+    private static final int NEIGHBOURS = 3;
+    private static final int CLAIM_ATTEMPTS = 5;
+    private static final long DEMAND_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(Settings.getLong("tracks.demandWindowMinutes", 60));
+    private static final long CLAIM_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(Settings.getLong("tracks.claimTimeoutMinutes", 10));
+
+    /**
+     * Position of every category in the personality values (same order as used when storing the user)
+     */
+    private static final Map<PsychologicalCategory, Integer> VALUE_INDEX = new EnumMap<>(PsychologicalCategory.class);
+    static {
+        VALUE_INDEX.put(PsychologicalCategory.NEUROTICISM, 0);
+        VALUE_INDEX.put(PsychologicalCategory.CONSCIENTIOUSNESS, 1);
+        VALUE_INDEX.put(PsychologicalCategory.AGREEABLENESS, 2);
+        VALUE_INDEX.put(PsychologicalCategory.EXTRAVERSION, 3);
+        VALUE_INDEX.put(PsychologicalCategory.OPENNESS, 4);
+    }
+
+    @Resource
+    private TimerService timerService;
+
+    private final Map<String, ConcurrentSkipListSet<GeneratedTrack>> tracksByFolder = new ConcurrentHashMap<>();
+    private final Map<String, GeneratedTrack> tracksByPath = new ConcurrentHashMap<>();
+    private final Map<String, DecayingRate> consumption = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+    @PostConstruct
+    public void init() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            Path root = Paths.get(TRACK_DIRECTORY);
+            root.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            try (DirectoryStream<Path> folders = Files.newDirectoryStream(root, Files::isDirectory)) {
+                for (Path folder : folders)
+                    folder.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+            Thread watcher = new Thread(this::watch, "generated-tracks-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException e) {
+            System.err.println("Can't watch " + TRACK_DIRECTORY + ": " + e.getLocalizedMessage());
+        }
+        reconcile();
+        if (RECONCILE_MINUTES > 0) {
+            long interval = TimeUnit.MINUTES.toMillis(RECONCILE_MINUTES);
+            timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            if (watchService != null)
+                watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param values the evaluated values of the users personality
+     * @param convertedOnly true if only tracks that are already converted to mp3 may be selected
+     * @return the track that fits the personality best: a track of a genre of the most distinct category
+     * with a tempo close to the one of the category, null if there is no (converted) track at all
+     */
+    public GeneratedTrack select(double[] values, boolean convertedOnly) {
+        List<PsychologicalCategory> categories = new ArrayList<>(VALUE_INDEX.keySet());
+        categories.removeIf(category -> category.getGenres() == null);
+        categories.sort(Comparator.comparingDouble((PsychologicalCategory category) -> values[VALUE_INDEX.get(category)]).reversed());
+
+        for (PsychologicalCategory category : categories) {
+            GeneratedTrack track = closest(foldersOf(category.getGenres()), targetBpm(category, values[VALUE_INDEX.get(category)]), convertedOnly);
+            if (track != null)
+                return track;
+        }
+        return closest(tracksByFolder.keySet(), DEFAULT_BPM, convertedOnly);
+    }
+
+    /**
+     * Claims the track that fits the personality best (see select()), tracks that are already converted are preferred.
+     * If another request claimed the track first, the next best track is tried.
+     * @param values the evaluated values of the users personality
+     * @return the claim of the track, null if no track could be claimed
+     */
+    public TrackClaim claim(double[] values) {
+        for (int attempt = 0; attempt < CLAIM_ATTEMPTS; attempt++) {
+            GeneratedTrack track = select(values, true);
+            if (track == null)
+                track = select(values, false);
+            if (track == null) {
+                if (attempt > 0)
+                    return null;
+                reconcile();
+                continue;
+            }
+            remove(track.getFile());
+            TrackClaim claim = TrackClaim.tryClaim(track);
+            if (claim != null) {
+                consumption.computeIfAbsent(track.getFolder(), folder -> new DecayingRate(DEMAND_WINDOW_MILLIS)).record();
+                return claim;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param folder name of the output directory
+     * @return number of indexed tracks in the directory
+     */
+    public int count(String folder) {
+        Set<GeneratedTrack> tracks = tracksByFolder.get(folder);
+        return tracks == null ? 0 : tracks.size();
+    }
+
+    /**
+     * @param folder name of the output directory
+     * @return indexed tracks of the directory that are not converted to mp3 yet
+     */
+    public List<GeneratedTrack> unconverted(String folder) {
+        List<GeneratedTrack> unconverted = new ArrayList<>();
+        Set<GeneratedTrack> tracks = tracksByFolder.get(folder);
+        if (tracks != null)
+            tracks.stream().filter(track -> !track.isConverted()).forEach(unconverted::add);
+        return unconverted;
+    }
+
+    /**
+     * @param folder name of the output directory
+     * @return exponentially weighted number of tracks claimed per millisecond from the directory
+     */
+    public double getConsumptionPerMilli(String folder) {
+        DecayingRate rate = consumption.get(folder);
+        return rate == null ? 0 : rate.getRatePerMilli();
+    }
+
+    public int size() {
+        return tracksByPath.size();
+    }
+
+    /**
+     * @return number of indexed tracks of every output directory
+     */
+    public Map<String, Integer> counts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        tracksByFolder.forEach((folder, tracks) -> counts.put(folder, tracks.size()));
+        return counts;
+    }
+
+    private static int targetBpm(PsychologicalCategory category, double value) {
+        int maxBpm = Math.min(category.getMaxBpm(), MAX_BPM);
+        return (int) Math.round(category.getMinBpm() + (maxBpm - category.getMinBpm()) * Math.min(Math.max(value, 0), 100) / 100);
+    }
+
+    /**
+     * @param genres genres of a category
+     * @return names of the output directories that contain tracks of one of the genres (the name contains the genre)
+     */
+    private Collection<String> foldersOf(List<MusicGenre> genres) {
+        List<String> folders = new ArrayList<>();
+        for (String folder : tracksByFolder.keySet()) {
+            String upperCaseFolder = folder.toUpperCase();
+            if (genres.stream().anyMatch(genre -> upperCaseFolder.contains(genre.name())))
+                folders.add(folder);
+        }
+        return folders;
+    }
+
+    /**
+     * @param folders output directories to search in
+     * @param bpm wanted tempo
+     * @param convertedOnly true if only tracks that are already converted to mp3 may be selected
+     * @return one of the tracks with the tempo closest to the given one, null if the directories contain no tracks
+     */
+    private GeneratedTrack closest(Collection<String> folders, int bpm, boolean convertedOnly) {
+        GeneratedTrack probe = new GeneratedTrack(new File(""), "", bpm);
+        List<GeneratedTrack> candidates = new ArrayList<>();
+        for (String folder : folders) {
+            ConcurrentSkipListSet<GeneratedTrack> tracks = tracksByFolder.get(folder);
+            if (tracks == null)
+                continue;
+            addNeighbours(candidates, tracks.tailSet(probe, true).iterator(), convertedOnly);
+            addNeighbours(candidates, tracks.headSet(probe, false).descendingIterator(), convertedOnly);
+        }
+        if (candidates.isEmpty())
+            return null;
+
+        int bestDistance = candidates.stream().mapToInt(track -> Math.abs(track.getBpm() - bpm)).min().getAsInt();
+        candidates.removeIf(track -> Math.abs(track.getBpm() - bpm) > bestDistance + BPM_TOLERANCE);
+        return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+    }
+
+    private static void addNeighbours(List<GeneratedTrack> candidates, Iterator<GeneratedTrack> tracks, boolean convertedOnly) {
+        int added = 0;
+        while (added < NEIGHBOURS && tracks.hasNext()) {
+            GeneratedTrack track = tracks.next();
+            if (!convertedOnly || track.isConverted()) {
+                candidates.add(track);
+                added++;
+            }
+        }
+    }
+
+    /**
+     * Adds the file to the index (or updates it), files that are not complete MIDI-files yet are ignored
+     * @param file file in an output directory
+     */
+    void add(File file) {
+        if (file.getName().endsWith(GeneratedTrack.MP3_EXTENSION)) {
+            setConverted(file, true);
+            return;
+        }
+        if (!file.getName().endsWith(MIDI_EXTENSION) || !file.isFile())
+            return;
+        try {
+            GeneratedTrack track = GeneratedTrack.read(file);
+            remove(file);
+            tracksByPath.put(file.getAbsolutePath(), track);
+            tracksByFolder.computeIfAbsent(track.getFolder(), folder -> new ConcurrentSkipListSet<>(GeneratedTrack.BY_TEMPO)).add(track);
+        } catch (IOException e) {
+            //still being written, the next modification event adds it
+        }
+    }
+
+    /**
+     * @param file file in an output directory
+     * @return true if the file was indexed
+     */
+    boolean remove(File file) {
+        if (file.getName().endsWith(GeneratedTrack.MP3_EXTENSION)) {
+            setConverted(file, false);
+            return false;
+        }
+        GeneratedTrack track = tracksByPath.remove(file.getAbsolutePath());
+        if (track == null)
+            return false;
+        Set<GeneratedTrack> tracks = tracksByFolder.get(track.getFolder());
+        if (tracks != null)
+            tracks.remove(track);
+        return true;
+    }
+
+    /**
+     * @param mp3File converted file of a track
+     * @param converted true if the file was created, false if it was deleted
+     */
+    private void setConverted(File mp3File, boolean converted) {
+        String name = mp3File.getName();
+        File midiFile = new File(mp3File.getParentFile(), name.substring(0, name.length() - GeneratedTrack.MP3_EXTENSION.length()) + MIDI_EXTENSION);
+        GeneratedTrack track = tracksByPath.get(midiFile.getAbsolutePath());
+        if (track != null)
+            track.setConverted(converted);
+    }
+
+    /**
+     * Synchronizes the index with the content of the output directories and makes stale claims available again
+     */
+    @Timeout
+    public void reconcile() {
+        File[] folders = new File(TRACK_DIRECTORY).listFiles(File::isDirectory);
+        if (folders == null)
+            return;
+
+        Set<String> existing = new HashSet<>();
+        for (File folder : folders)
+            existing.addAll(reconcile(folder));
+        for (String path : new ArrayList<>(tracksByPath.keySet())) {
+            if (!existing.contains(path))
+                remove(new File(path));
+        }
+    }
+
+    /**
+     * Synchronizes the index with the content of one output directory
+     * @param folder name of the output directory
+     */
+    public void refresh(String folder) {
+        File directory = new File(TRACK_DIRECTORY, folder);
+        Set<String> existing = reconcile(directory);
+        Set<GeneratedTrack> tracks = tracksByFolder.get(folder);
+        if (tracks == null)
+            return;
+        for (GeneratedTrack track : new ArrayList<>(tracks)) {
+            if (!existing.contains(track.getFile().getAbsolutePath()))
+                remove(track.getFile());
+        }
+    }
+
+    /**
+     * @param folder output directory
+     * @return paths of the available tracks in the directory, all of them are indexed
+     */
+    private Set<String> reconcile(File folder) {
+        Set<String> existing = new HashSet<>();
+        Set<String> claimedTracks = new HashSet<>();
+        File[] claimed = folder.listFiles((dir, name) -> name.contains(TrackClaim.CLAIM_MARKER));
+        if (claimed != null) {
+            for (File file : claimed) {
+                if (!TrackClaim.reclaimStale(file, CLAIM_TIMEOUT_MILLIS))
+                    claimedTracks.add(file.getName().substring(0, file.getName().lastIndexOf(TrackClaim.CLAIM_MARKER)));
+            }
+        }
+        removeOrphanedMp3Files(folder, claimedTracks);
+
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(MIDI_EXTENSION));
+        if (files == null)
+            return existing;
+        for (File file : files) {
+            existing.add(file.getAbsolutePath());
+            GeneratedTrack track = tracksByPath.get(file.getAbsolutePath());
+            if (track == null)
+                add(file);
+            else
+                track.setConverted(track.getMp3File().isFile());
+        }
+        return existing;
+    }
+
+    /**
+     * Deletes converted files whose track was used up while it was being converted
+     * @param folder output directory
+     * @param claimedTracks names of the MIDI-files that are claimed right now
+     */
+    private static void removeOrphanedMp3Files(File folder, Set<String> claimedTracks) {
+        File[] mp3Files = folder.listFiles((dir, name) -> name.endsWith(GeneratedTrack.MP3_EXTENSION));
+        if (mp3Files == null)
+            return;
+        for (File mp3File : mp3Files) {
+            String name = mp3File.getName();
+            String midiName = name.substring(0, name.length() - GeneratedTrack.MP3_EXTENSION.length()) + MIDI_EXTENSION;
+            boolean orphaned = !claimedTracks.contains(midiName) && !new File(folder, midiName).exists();
+            if (orphaned && System.currentTimeMillis() - mp3File.lastModified() > CLAIM_TIMEOUT_MILLIS)
+                mp3File.delete();
+        }
+    }
+
+    private void watch() {
+        Path root = Paths.get(TRACK_DIRECTORY);
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        reconcile();
+                        continue;
+                    }
+                    Path path = directory.resolve((Path) event.context());
+                    if (directory.equals(root)) {
+                        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                            try {
+                                path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                            } catch (IOException e) {
+                                System.err.println("Can't watch " + path + ": " + e.getLocalizedMessage());
+                            }
+                            reconcile();
+                        }
+                    } else if (event.kind() == ENTRY_DELETE) {
+                        remove(path.toFile());
+                    } else {
+                        add(path.toFile());
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //shutdown
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.musicmindproject.backend.logic.video;
+
+import com.musicmindproject.backend.logic.PersonalityImageGenerator;
+import com.musicmindproject.backend.logic.Settings;
+import com.musicmindproject.backend.logic.audio.AudioConverter;
+import com.musicmindproject.backend.logic.process.ProcessRequest;
+import com.musicmindproject.backend.logic.process.ProcessRunner;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.*;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Videos of the users (generated image + generated track) in /mnt/personality_videos. Concurrent requests for the
+ * same video wait for one encoding. Videos are kept for musicmind.video.ttlMinutes after they were last requested,
+ * the least recently requested ones are removed earlier if the videos exceed musicmind.video.cacheBudgetMb.
+ * A video is encoded again if the image or the track of the user is newer (see invalidate()).
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class VideoCache {
+    private static final String VIDEO_PATH = "/mnt/personality_videos";
+    private static final String PART_EXTENSION = ".part.mp4";
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(Settings.getLong("video.ttlMinutes", 10));
+    private static final long BUDGET_BYTES = Settings.getLong("video.cacheBudgetMb", 1024) * 1024 * 1024;
+
+    @Inject
+    private ProcessRunner processRunner;
+    @Inject
+    private PersonalityImageGenerator imageGenerator;
+
+    private final Map<String, CompletableFuture<File>> inFlight = new ConcurrentHashMap<>();
+    /**
+     * Time of the last request per cached video
+     */
+    private final Map<String, Long> lastAccess = new ConcurrentHashMap<>();
+    /**
+     * Videos that were encoded in advance and not requested yet
+     */
+    private final Set<String> prerendered = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger foregroundEncodes = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prerenderedVideos = new AtomicLong();
+    private final AtomicLong prerenderHits = new AtomicLong();
+    private final AtomicLong prerenderWasted = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        File[] videos = new File(VIDEO_PATH).listFiles((dir, name) -> name.endsWith(".mp4"));
+        if (videos == null)
+            return;
+        for (File video : videos) {
+            if (video.getName().endsWith(PART_EXTENSION)) // left over by an interrupted encoding
+                video.delete();
+            else
+                lastAccess.put(video.getName().substring(0, video.getName().length() - ".mp4".length()), video.lastModified());
+        }
+        reap();
+    }
+
+    /**
+     * @param filepath Path to the files belonging to the user
+     * @return the video of the user, it is encoded if it is not cached
+     */
+    public File getVideo(String filepath) throws IOException, InterruptedException {
+        File video = videoOf(filepath);
+        if (isCached(filepath)) {
+            lastAccess.put(filepath, System.currentTimeMillis());
+            hits.incrementAndGet();
+            if (prerendered.remove(filepath))
+                prerenderHits.incrementAndGet();
+            return video;
+        }
+
+        misses.incrementAndGet();
+        foregroundEncodes.incrementAndGet();
+        try {
+            return encodeOnce(filepath, video);
+        } finally {
+            foregroundEncodes.decrementAndGet();
+        }
+    }
+
+    /**
+     * Encodes the video of the user in advance (see VideoPrerenderer), a video that is already cached (and not stale)
+     * is kept for another TTL. Call invalidate() first if the track or the image of the user changed.
+     * @param filepath Path to the files belonging to the user
+     */
+    public void prerender(String filepath) throws IOException, InterruptedException {
+        File video = videoOf(filepath);
+        if (isCached(filepath)) {
+            lastAccess.replace(filepath, System.currentTimeMillis());
+            return;
+        }
+        encodeOnce(filepath, video);
+        prerendered.add(filepath);
+        prerenderedVideos.incrementAndGet();
+    }
+
+    /**
+     * Removes the cached video of the user, has to be called when the track or the image of the user changed
+     * (the filepath stays the same when the user answers the questions again)
+     * @param filepath Path to the files belonging to the user
+     */
+    public void invalidate(String filepath) {
+        lastAccess.remove(filepath);
+        prerendered.remove(filepath);
+        videoOf(filepath).delete();
+    }
+
+    /**
+     * Encodes the video, concurrent calls for the same video wait for the running encoding
+     */
+    private File encodeOnce(String filepath, File video) throws IOException, InterruptedException {
+        CompletableFuture<File> encoding = new CompletableFuture<>();
+        CompletableFuture<File> running = inFlight.putIfAbsent(filepath, encoding);
+        if (running == null) {
+            try {
+                encode(filepath, video);
+                lastAccess.put(filepath, System.currentTimeMillis());
+                encoding.complete(video);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                encoding.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(filepath, encoding);
+            }
+            return video;
+        }
+
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Encoding the video failed", e.getCause());
+        }
+    }
+
+    /**
+     * @return true if the video is available without encoding it and not older than the image of the user
+     */
+    public boolean isCached(String filepath) {
+        File video = videoOf(filepath);
+        return lastAccess.containsKey(filepath) && video.isFile() && !isStale(filepath, video);
+    }
+
+    /**
+     * @return true if the image or the track was written after the video (the user answered the questions again)
+     */
+    private static boolean isStale(String filepath, File video) {
+        long encoded = video.lastModified();
+        return new File(String.format("/mnt/personality_images/%s.svg", filepath)).lastModified() > encoded
+                || new File(String.format("/mnt/personality_images/%s.png", filepath)).lastModified() > encoded
+                || new File(String.format("/mnt/personality_music/%s.mp3", filepath)).lastModified() > encoded;
+    }
+
+    /**
+     * @return number of encodings requests are waiting for
+     */
+    public int getForegroundEncodes() {
+        return foregroundEncodes.get();
+    }
+
+    public Map<String, Object> getStatistics() {
+        long hits = this.hits.get();
+        long requests = hits + misses.get();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("cached", lastAccess.size());
+        statistics.put("encoding", inFlight.size());
+        statistics.put("hits", hits);
+        statistics.put("misses", misses.get());
+        statistics.put("hitRate", requests == 0 ? 0 : hits / (double) requests);
+        statistics.put("prerendered", prerenderedVideos.get());
+        statistics.put("prerenderHits", prerenderHits.get());
+        statistics.put("prerenderWasted", prerenderWasted.get());
+        return statistics;
+    }
+
+    /**
+     * Merges the generated track and the generated image of the user
+     */
+    private void encode(String filepath, File video) throws IOException, InterruptedException {
+        File part = new File(VIDEO_PATH, filepath + PART_EXTENSION);
+        if (!imageGenerator.ensurePng(filepath))
+            throw new IOException("No image for " + filepath);
+        try {
+            processRunner.runAndWait(new ProcessRequest("ffmpeg",
+                    "ffmpeg",
+                    "-i",
+                    String.format("/mnt/personality_images/%s.png", filepath),
+                    "-i",
+                    String.format("/mnt/personality_music/%s.mp3", filepath),
+                    "-strict",
+                    "-2",
+                    "-c:v",
+                    "libx264",
+                    "-pix_fmt",
+                    "yuv420p",
+                    part.getAbsolutePath(),
+                    "-y"));
+            if (!part.isFile())
+                throw new IOException("ffmpeg failed for " + filepath);
+            Files.setPosixFilePermissions(part.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+            AudioConverter.move(part, video);
+        } finally {
+            Files.deleteIfExists(part.toPath());
+        }
+    }
+
+    /**
+     * Removes videos that were not requested within the TTL, then the least recently requested ones until the
+     * videos fit into the budget
+     */
+    @Schedule(minute = "*", hour = "*", persistent = false)
+    public void reap() {
+        long expired = System.currentTimeMillis() - TTL_MILLIS;
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(lastAccess.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+
+        long size = 0;
+        for (Map.Entry<String, Long> entry : entries)
+            size += videoOf(entry.getKey()).length();
+        for (Map.Entry<String, Long> entry : entries) {
+            if (entry.getValue() >= expired && size <= BUDGET_BYTES)
+                break;
+            File video = videoOf(entry.getKey());
+            long length = video.length();
+            if (lastAccess.remove(entry.getKey(), entry.getValue())) {
+                if (video.delete() || !video.exists())
+                    size -= length;
+                if (prerendered.remove(entry.getKey()))
+                    prerenderWasted.incrementAndGet();
+            }
+        }
+    }
+
+    private static File videoOf(String filepath) {
+        return new File(VIDEO_PATH, filepath + ".mp4");
+    }
+}
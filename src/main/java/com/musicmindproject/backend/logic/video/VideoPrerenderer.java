@@ -0,0 +1,106 @@
+package com.musicmindproject.backend.logic.video;
+
+import com.musicmindproject.backend.entities.User;
+import com.musicmindproject.backend.logic.MusicJobScheduler;
+import com.musicmindproject.backend.logic.Settings;
+import com.musicmindproject.backend.logic.database.UserManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.*;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes videos in advance for users that are likely to be shared (new users and the hottest ones), so sharing
+ * doesn't have to wait for ffmpeg. Videos are encoded one at a time by a low-priority thread, and only while the
+ * system load per core is below musicmind.video.prerenderMaxLoad, no music-jobs are waiting and no requested
+ * video is being encoded.
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class VideoPrerenderer {
+    private static final int QUEUE_CAPACITY = Settings.getInt("video.prerenderQueue", 100);
+    private static final int HOTTEST = Settings.getInt("video.prerenderHottest", 20);
+    private static final double MAX_LOAD = Settings.getDouble("video.prerenderMaxLoad", 0.75);
+    private static final long POLL_MILLIS = TimeUnit.SECONDS.toMillis(Settings.getLong("video.prerenderPollSeconds", 5));
+
+    @Inject
+    private VideoCache videoCache;
+    @Inject
+    private UserManager userManager;
+    @Inject
+    private MusicJobScheduler jobScheduler;
+
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private Thread worker;
+
+    @PostConstruct
+    public void init() {
+        worker = new Thread(this::work, "video-prerenderer");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.interrupt();
+    }
+
+    /**
+     * Queues the encoding of a video, nothing happens if the queue is full
+     * @param filepath Path to the files belonging to the user
+     */
+    public void offer(String filepath) {
+        if (filepath != null && queued.add(filepath) && !queue.offer(filepath))
+            queued.remove(filepath);
+    }
+
+    /**
+     * Queues the videos of the hottest users
+     */
+    @Schedule(minute = "*/5", hour = "*", persistent = false)
+    public void offerHottest() {
+        for (User user : userManager.retrieveMany(0, HOTTEST, "hottest"))
+            offer(user.getFilename());
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                String filepath = queue.take();
+                while (isBusy())
+                    Thread.sleep(POLL_MILLIS);
+                queued.remove(filepath);
+                videoCache.prerender(filepath);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Prerendering a video failed: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * @return true if requests could be slowed down by encoding a video now
+     */
+    private boolean isBusy() {
+        double load = os.getSystemLoadAverage() / os.getAvailableProcessors();
+        return load > MAX_LOAD || jobScheduler.getQueueDepth() > 0 || videoCache.getForegroundEncodes() > 0;
+    }
+}
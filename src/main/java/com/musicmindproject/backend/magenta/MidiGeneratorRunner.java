@@ -1,52 +1,287 @@
 package com.musicmindproject.backend.magenta;
 
+import com.musicmindproject.backend.logic.Settings;
+import com.musicmindproject.backend.logic.audio.AudioConverter;
+import com.musicmindproject.backend.logic.process.ProcessRequest;
+import com.musicmindproject.backend.logic.process.ProcessRunner;
+import com.musicmindproject.backend.logic.tracks.GeneratedTrack;
+import com.musicmindproject.backend.logic.tracks.TrackIndex;
+
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
-import java.io.BufferedReader;
+import javax.inject.Inject;
 import java.io.File;
-import java.io.InputStreamReader;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.Objects;
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Schedules the generation of tracks for every neural network (magenta run).
+ * At most musicmind.generation.concurrency generations run at the same time, free slots are always given to the
+ * run whose output directory has the lowest stock relative to its target.
+ * Targets follow the demand of every run (see getTargetStock()), missing tracks are generated in batches.
+ * New tracks are converted to mp3 right after their generation (and whenever a slot is free), so they are ready to be served.
+ */
 @Startup
 @Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 public class MidiGeneratorRunner {
     private static final String LOG_DIRECTORY = "/mnt/network_training/melody_rnn/logdir";
     private static final String OUTPUT_DIRECTORY = "/mnt/generated_tracks/%s";
     private static final String WORKING_DIRECTORY = "/root/magenta";
     private static final int NUM_RUN_STEPS = 128;
+    private static final int MIN_STOCK = Settings.getInt("generation.minStock", 2);
+    private static final int MAX_STOCK = Settings.getInt("generation.maxStock", 50);
+    private static final int MAX_BATCH = Settings.getInt("generation.maxBatch", 10);
+    private static final long DEFAULT_MILLIS_PER_TRACK = TimeUnit.MINUTES.toMillis(2);
+    /**
+     * Stock has to cover the demand during this many generations (one to refill, one as reserve)
+     */
+    private static final double SAFETY_FACTOR = 2;
+    private static final Set<String> SINGLE_OUTPUT_RUNS = new HashSet<>(Arrays.asList(Settings.getString("generation.singleOutputRuns", "").split(",")));
+    private static final int CONCURRENCY = Settings.getInt("generation.concurrency", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final long POLL_SECONDS = Settings.getLong("generation.pollSeconds", 5);
+
+    @Inject
+    private TrackIndex trackIndex;
+    @Inject
+    private AudioConverter audioConverter;
+    @Inject
+    private ProcessRunner processRunner;
+
+    private final Set<String> runningGenerations = ConcurrentHashMap.newKeySet();
+    private final Map<String, GenerationStatistics> statistics = new ConcurrentHashMap<>();
+    private volatile int queueDepth;
+    private ScheduledExecutorService dispatcher;
+    private ExecutorService generators;
 
     /**
-     * runs a bash script for every neural network, when there are less than 10 generated tracks in the corresponding target directory
+     * starts the dispatcher, which checks every few seconds whether a run has less tracks than its target
      */
     @PostConstruct
     public void init() {
-        File logDir = new File(LOG_DIRECTORY);
-        File[] runDirs = logDir.listFiles();
-        for(File subdir: Objects.requireNonNull(runDirs)) {
-            String currName = subdir.getName().replace("run_", "");
-            Thread toRun = new Thread(() -> {
-                while (true) {
-                    try {
-                        if (Files.notExists(Paths.get(String.format(OUTPUT_DIRECTORY, currName))) || Objects.requireNonNull(new File(String.format(OUTPUT_DIRECTORY, currName)).listFiles()).length < 10) {
-                            Process magentaCommand = Runtime.getRuntime().exec(new String[]{"/bin/bash", "-c", "sudo bash generate_file.bash " + currName + " " + NUM_RUN_STEPS}, null, new File(WORKING_DIRECTORY));
-                            magentaCommand.waitFor();
-                            magentaCommand = Runtime.getRuntime().exec(new String[]{"/bin/bash", "-c", String.format("chmod -R 777 " + OUTPUT_DIRECTORY, "")});
-                            magentaCommand.waitFor();
-                        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        dispatcher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "generation-dispatcher"));
+        generators = Executors.newFixedThreadPool(CONCURRENCY, r -> new Thread(r, "generation-" + threadNumber.incrementAndGet()));
+        dispatcher.scheduleWithFixedDelay(this::dispatch, 0, POLL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * stops scheduling (the ProcessRunner kills the running generations)
+     */
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        generators.shutdownNow();
+    }
+
+    /**
+     * Fills the free generation slots with the runs that need new tracks most urgently
+     */
+    private void dispatch() {
+        try {
+            File[] runDirs = new File(LOG_DIRECTORY).listFiles(File::isDirectory);
+            if (runDirs == null)
+                return;
 
-                        TimeUnit.SECONDS.sleep(5);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+            PriorityQueue<String> waiting = new PriorityQueue<>(Comparator.comparingDouble(this::fillLevel));
+            for (File runDir : runDirs) {
+                String model = runDir.getName().replace("run_", "");
+                if (!runningGenerations.contains(model) && trackIndex.count(model) < getTargetStock(model))
+                    waiting.add(model);
+            }
+
+            while (runningGenerations.size() < CONCURRENCY && !waiting.isEmpty()) {
+                String model = waiting.poll();
+                int batchSize = getBatchSize(model, getTargetStock(model) - trackIndex.count(model));
+                runningGenerations.add(model);
+                generators.execute(() -> generate(model, batchSize));
+            }
+            queueDepth = waiting.size();
+
+            for (File runDir : runDirs) {
+                String model = runDir.getName().replace("run_", "");
+                if (runningGenerations.size() >= CONCURRENCY)
+                    break;
+                if (!runningGenerations.contains(model) && !trackIndex.unconverted(model).isEmpty()) {
+                    runningGenerations.add(model);
+                    generators.execute(() -> {
+                        try {
+                            convertPending(model);
+                        } finally {
+                            runningGenerations.remove(model);
+                        }
+                    });
                 }
-            });
-            toRun.start();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
+    }
 
+    private double fillLevel(String model) {
+        return trackIndex.count(model) / (double) getTargetStock(model);
     }
 
+    /**
+     * @param model name of the run
+     * @return number of tracks that should be available for the run: enough to cover the demand (exponentially
+     * weighted rate of claimed tracks) while the next tracks are generated
+     */
+    public int getTargetStock(String model) {
+        double expectedDemand = trackIndex.getConsumptionPerMilli(model) * getMillisPerTrack(model) * getBatchSize(model, MAX_BATCH);
+        return (int) Math.min(MAX_STOCK, MIN_STOCK + Math.ceil(SAFETY_FACTOR * expectedDemand));
+    }
+
+    /**
+     * @param model name of the run
+     * @param missing number of tracks missing to reach the target stock
+     * @return number of tracks generated by one run of the script, model loading is paid once per batch
+     */
+    private int getBatchSize(String model, int missing) {
+        if (SINGLE_OUTPUT_RUNS.contains(model))
+            return 1;
+        return Math.max(1, Math.min(missing, MAX_BATCH));
+    }
+
+    /**
+     * @param model name of the run
+     * @return measured time to generate one track (including the share of the model loading)
+     */
+    private double getMillisPerTrack(String model) {
+        GenerationStatistics modelStatistics = statistics.get(model);
+        return modelStatistics == null || modelStatistics.getTracks() == 0 ? DEFAULT_MILLIS_PER_TRACK : modelStatistics.getAverageMillisPerTrack();
+    }
+
+    /**
+     * runs the bash script generating tracks with the neural network of the given run
+     * @param model name of the run
+     * @param batchSize number of tracks to generate
+     */
+    private void generate(String model, int batchSize) {
+        long start = System.nanoTime();
+        int stockBefore = trackIndex.count(model);
+        boolean failed = false;
+        try {
+            try {
+                // generous deadline: a hanging generation must not block its slot forever
+                long timeoutMillis = Math.max(TimeUnit.MINUTES.toMillis(10), (long) (4 * getMillisPerTrack(model) * batchSize));
+                processRunner.runAndWait(new ProcessRequest("magenta", "/bin/bash", "-c", "sudo bash generate_file.bash " + model + " " + NUM_RUN_STEPS + " " + batchSize)
+                        .directory(new File(WORKING_DIRECTORY))
+                        .timeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                        .processGroup()); // the python processes of the script have to be killed with it
+            } catch (IOException e) {
+                // tracks written before the failure are still usable
+                failed = true;
+                System.err.println("Generation of " + model + " failed: " + e.getLocalizedMessage());
+            }
+            processRunner.runAndWait(new ProcessRequest("chmod", "chmod", "-R", "777", String.format(OUTPUT_DIRECTORY, model)));
+            trackIndex.refresh(model);
+            // the script may ignore the batch size, only tracks that were actually written count
+            int generated = trackIndex.count(model) - stockBefore;
+            if (!failed && generated > 0)
+                statistics.computeIfAbsent(model, name -> new GenerationStatistics()).record(System.nanoTime() - start, generated);
+            convertPending(model);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            runningGenerations.remove(model);
+        }
+    }
+
+    /**
+     * Conversion stage: converts every track of the run that has no mp3 yet, so requests never have to wait for a conversion
+     * @param model name of the run
+     */
+    private void convertPending(String model) {
+        for (GeneratedTrack track : trackIndex.unconverted(model)) {
+            if (Thread.currentThread().isInterrupted())
+                return;
+            try {
+                audioConverter.convertToMP3(track.getFile(), track.getMp3File());
+                trackIndex.refresh(model);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("Pre-conversion of " + track.getFile() + " failed: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * @return number of runs that need new tracks but wait for a free slot
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return names of the runs that are generating right now
+     */
+    public Set<String> getRunningGenerations() {
+        return new TreeSet<>(runningGenerations);
+    }
+
+    /**
+     * @return current target stock of every run that has an output directory
+     */
+    public Map<String, Integer> getTargetStocks() {
+        Map<String, Integer> targets = new TreeMap<>();
+        for (String model : trackIndex.counts().keySet())
+            targets.put(model, getTargetStock(model));
+        return targets;
+    }
+
+    /**
+     * @return generation statistics of every run
+     */
+    public Map<String, GenerationStatistics> getStatistics() {
+        return new TreeMap<>(statistics);
+    }
+
+    /**
+     * Number and duration of the generations of a run
+     */
+    public static class GenerationStatistics {
+        private long generations;
+        private long tracks;
+        private double lastMillis;
+        private double averageMillis;
+        private double totalMillis;
+
+        synchronized void record(long nanos, int generatedTracks) {
+            lastMillis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            averageMillis = (averageMillis * generations + lastMillis) / (generations + 1);
+            totalMillis += lastMillis;
+            generations++;
+            tracks += generatedTracks;
+        }
+
+        public synchronized long getGenerations() {
+            return generations;
+        }
+
+        public synchronized long getTracks() {
+            return tracks;
+        }
+
+        public synchronized double getAverageMillisPerTrack() {
+            return tracks == 0 ? 0 : totalMillis / tracks;
+        }
+
+        public synchronized double getLastMillis() {
+            return lastMillis;
+        }
+
+        public synchronized double getAverageMillis() {
+            return averageMillis;
+        }
+    }
 }
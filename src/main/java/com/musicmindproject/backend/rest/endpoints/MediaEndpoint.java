@@ -0,0 +1,150 @@
+package com.musicmindproject.backend.rest.endpoints;
+
+import com.musicmindproject.backend.logic.PersonalityImageGenerator;
+import com.musicmindproject.backend.logic.Settings;
+import com.musicmindproject.backend.logic.media.ByteRange;
+import com.musicmindproject.backend.logic.media.DirectBufferPool;
+
+import javax.inject.Inject;
+import javax.ws.rs.*;
+import javax.ws.rs.core.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serves the generated mp3s, images and videos. Supports Range requests (seeking in the player only loads the
+ * requested part) and conditional requests (If-None-Match, If-Modified-Since).
+ * Small files are sent through the bounded DirectBufferPool, large ones with FileChannel.transferTo().
+ * PNGs of the personality images are rendered on the first request if only the SVG exists.
+ */
+@Path("media")
+public class MediaEndpoint {
+    private static final long TRANSFER_THRESHOLD = Settings.getLong("media.transferThresholdMb", 8) * 1024 * 1024;
+    private static final Map<String, String> DIRECTORIES = new HashMap<>();
+    private static final Map<String, String> TYPES = new HashMap<>();
+
+    static {
+        DIRECTORIES.put("music", "/mnt/personality_music");
+        TYPES.put("music", "audio/mpeg");
+        DIRECTORIES.put("images", "/mnt/personality_images");
+        TYPES.put("images", "image/png");
+        DIRECTORIES.put("videos", "/mnt/personality_videos");
+        TYPES.put("videos", "video/mp4");
+    }
+
+    @Inject
+    private DirectBufferPool bufferPool;
+    @Inject
+    private PersonalityImageGenerator imageGenerator;
+    @Context
+    private Request request;
+
+    /**
+     * @param type music, images or videos
+     * @param name name of the file (with extension)
+     * @param range value of the Range header (a single range is supported)
+     * @param ifRange value of the If-Range header, the range is ignored if it doesn't match the ETag
+     * @return the (partial) file, 304 if the client has the current version, 416 if the range can't be satisfied
+     */
+    @GET
+    @Path("{type}/{name}")
+    public Response getMedia(@PathParam("type") String type, @PathParam("name") String name,
+                             @HeaderParam("Range") String range, @HeaderParam("If-Range") String ifRange) {
+        String directory = DIRECTORIES.get(type);
+        if (directory == null || name.contains("/") || name.startsWith("."))
+            return Response.status(Response.Status.NOT_FOUND).build();
+        File file = new File(directory, name);
+        if (!file.isFile() && type.equals("images") && name.endsWith(".png"))
+            imageGenerator.ensurePng(name.substring(0, name.length() - ".png".length()));
+        if (!file.isFile())
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        long length = file.length();
+        long lastModified = file.lastModified();
+        EntityTag eTag = new EntityTag(Long.toHexString(length) + "-" + Long.toHexString(lastModified));
+        Date lastModifiedDate = new Date(lastModified / 1000 * 1000);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModifiedDate, eTag);
+        if (notModified != null)
+            return notModified.tag(eTag).cacheControl(cacheControl()).build();
+
+        if (ifRange != null && !ifRange.equals(eTag.toString()))
+            range = null;
+        ByteRange byteRange = ByteRange.parse(range, length);
+        if (byteRange == null)
+            return Response.status(416).header("Content-Range", "bytes */" + length).build();
+
+        Response.ResponseBuilder response = range == null || byteRange.getLength() == length
+                ? Response.ok()
+                : Response.status(206).header("Content-Range", byteRange.toContentRange(length));
+        return response
+                .entity((StreamingOutput) out -> send(file, byteRange, out))
+                .type(name.endsWith(".svg") ? "image/svg+xml" : TYPES.get(type))
+                .cacheControl(cacheControl())
+                .header("Accept-Ranges", "bytes")
+                .header(HttpHeaders.CONTENT_LENGTH, byteRange.getLength())
+                .tag(eTag)
+                .lastModified(lastModifiedDate)
+                .build();
+    }
+
+    /**
+     * Every media file has to be revalidated (If-None-Match): the URLs stay the same when the user answers the
+     * questions again, only the ETag changes
+     */
+    private static CacheControl cacheControl() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setPrivate(false);
+        cacheControl.setNoTransform(false);
+        cacheControl.setNoCache(true);
+        return cacheControl;
+    }
+
+    private void send(File file, ByteRange range, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = range.getFirst();
+            long end = range.getLast() + 1;
+            if (range.getLength() >= TRANSFER_THRESHOLD) {
+                while (position < end) {
+                    long sent = channel.transferTo(position, end - position, target);
+                    if (sent <= 0)
+                        break;
+                    position += sent;
+                }
+                return;
+            }
+
+            ByteBuffer buffer = bufferPool.acquire();
+            try {
+                while (position < end) {
+                    // Buffer casts keep the class compatible with Java 8 when compiled with a newer JDK
+                    ((Buffer) buffer).clear();
+                    ((Buffer) buffer).limit((int) Math.min(buffer.capacity(), end - position));
+                    int read = channel.read(buffer, position);
+                    if (read < 0)
+                        break;
+                    ((Buffer) buffer).flip();
+                    while (buffer.hasRemaining())
+                        target.write(buffer);
+                    position += read;
+                }
+            } finally {
+                bufferPool.release(buffer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
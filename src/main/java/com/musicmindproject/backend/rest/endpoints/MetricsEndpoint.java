@@ -0,0 +1,118 @@
+package com.musicmindproject.backend.rest.endpoints;
+
+import com.google.gson.GsonBuilder;
+import com.musicmindproject.backend.logic.audio.AudioConverter;
+import com.musicmindproject.backend.logic.counters.CounterBuffer;
+import com.musicmindproject.backend.logic.database.ConnectionPoolStatistics;
+import com.musicmindproject.backend.logic.process.ProcessRunner;
+import com.musicmindproject.backend.logic.tracks.TrackIndex;
+import com.musicmindproject.backend.logic.video.VideoCache;
+import com.musicmindproject.backend.logic.video.VideoPrerenderer;
+import com.musicmindproject.backend.magenta.MidiGeneratorRunner;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Path("metrics")
+public class MetricsEndpoint {
+    @Inject
+    private TrackIndex trackIndex;
+    @Inject
+    private MidiGeneratorRunner generatorRunner;
+    @Inject
+    private AudioConverter audioConverter;
+    @Inject
+    private VideoCache videoCache;
+    @Inject
+    private ProcessRunner processRunner;
+    @Inject
+    private VideoPrerenderer videoPrerenderer;
+    @Inject
+    private CounterBuffer counterBuffer;
+
+    /**
+     * @return JsonObject with the number of active and idle connections and the time spent waiting for a connection
+     */
+    @GET
+    @Path("database")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doDatabaseMetricsGet() {
+        return Response.ok(new GsonBuilder().create().toJson(ConnectionPoolStatistics.getInstance().toMap())).build();
+    }
+
+    /**
+     * @return JsonObject with the number of available generated tracks per output directory
+     */
+    @GET
+    @Path("tracks")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doTrackMetricsGet() {
+        return Response.ok(new GsonBuilder().create().toJson(trackIndex.counts())).build();
+    }
+
+    /**
+     * @return JsonObject with the runs waiting for a generation slot, the running generations, stock and target stock
+     * and the generation times per run
+     */
+    @GET
+    @Path("generation")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doGenerationMetricsGet() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("queueDepth", generatorRunner.getQueueDepth());
+        metrics.put("running", generatorRunner.getRunningGenerations());
+        metrics.put("stock", trackIndex.counts());
+        metrics.put("targetStock", generatorRunner.getTargetStocks());
+        metrics.put("runs", generatorRunner.getStatistics());
+        return Response.ok(new GsonBuilder().create().toJson(metrics)).build();
+    }
+
+    /**
+     * @return JsonObject with the number of handed out tracks that were converted in advance or inline and the fallback rate
+     */
+    @GET
+    @Path("conversion")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doConversionMetricsGet() {
+        return Response.ok(new GsonBuilder().create().toJson(audioConverter.getStatistics())).build();
+    }
+
+    /**
+     * @return JsonObject with the cached videos, the hit rate of the requested videos and how many of the videos
+     * encoded in advance were requested or removed unused
+     */
+    @GET
+    @Path("video")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doVideoMetricsGet() {
+        Map<String, Object> metrics = new LinkedHashMap<>(videoCache.getStatistics());
+        metrics.put("prerenderQueueDepth", videoPrerenderer.getQueueDepth());
+        return Response.ok(new GsonBuilder().create().toJson(metrics)).build();
+    }
+
+    /**
+     * @return JsonObject with the runs, failures, timeouts, exit codes and latency of the external processes per tool
+     */
+    @GET
+    @Path("processes")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doProcessMetricsGet() {
+        return Response.ok(new GsonBuilder().create().toJson(processRunner.getStatistics())).build();
+    }
+
+    /**
+     * @return JsonObject with the number of users whose plays and shares are not in the database yet and the flushes
+     */
+    @GET
+    @Path("counters")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doCounterMetricsGet() {
+        return Response.ok(new GsonBuilder().create().toJson(counterBuffer.getStatistics())).build();
+    }
+}
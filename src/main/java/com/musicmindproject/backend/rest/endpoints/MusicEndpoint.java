@@ -1,122 +1,179 @@
 package com.musicmindproject.backend.rest.endpoints;
 
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.musicmindproject.backend.entities.MusicJob;
 import com.musicmindproject.backend.entities.Play;
 import com.musicmindproject.backend.entities.Share;
-import com.musicmindproject.backend.entities.User;
+import com.musicmindproject.backend.entities.enums.JobStage;
+import com.musicmindproject.backend.logic.MusicJobScheduler;
 import com.musicmindproject.backend.logic.PersonalityEvaluator;
-import com.musicmindproject.backend.logic.PersonalityImageGenerator;
+import com.musicmindproject.backend.logic.ScoringKernel;
+import com.musicmindproject.backend.logic.ScoringSession;
+import com.musicmindproject.backend.logic.ScoringSessionManager;
+import com.musicmindproject.backend.logic.Settings;
+import com.musicmindproject.backend.logic.audio.AudioStreams;
+import com.musicmindproject.backend.logic.audio.ProgressiveFile;
+import com.musicmindproject.backend.logic.counters.CounterBuffer;
+import com.musicmindproject.backend.logic.database.MusicJobManager;
 import com.musicmindproject.backend.logic.database.PlaysManager;
 import com.musicmindproject.backend.logic.database.QuestionManager;
 import com.musicmindproject.backend.logic.database.SharesManager;
 import com.musicmindproject.backend.logic.database.UserManager;
+import com.musicmindproject.backend.logic.ranking.ExploreCursor;
+import com.musicmindproject.backend.logic.video.VideoCache;
 
 import javax.inject.Inject;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
 import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.io.BufferedReader;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
-import java.util.Objects;
-import java.util.Random;
-import java.util.concurrent.TimeUnit;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.UUID;
 
 @Path("music")
 public class MusicEndpoint {
+    private static final int DEFAULT_PAGE_SIZE = Settings.getInt("explore.pageSize", 20);
+    private static final int MAX_PAGE_SIZE = Settings.getInt("explore.maxPageSize", 100);
+    private static final int MAX_BATCH_SIZE = Settings.getInt("evaluate.maxBatchSize", 1000);
+
     @Inject
     private UserManager userManager;
     @Inject
     private PersonalityEvaluator evaluator;
     @Inject
+    private MusicJobManager jobManager;
+    @Inject
+    private MusicJobScheduler jobScheduler;
+    @Inject
+    private ScoringSessionManager sessionManager;
+    @Inject
     private QuestionManager questionManager;
     @Inject
     private PlaysManager playsManager;
     @Inject
     private SharesManager sharesManager;
     @Inject
-    private PersonalityImageGenerator personalityImageGenerator;
+    private AudioStreams audioStreams;
+    @Inject
+    private VideoCache videoCache;
+    @Inject
+    private CounterBuffer counterBuffer;
+    @Context
+    private UriInfo uriInfo;
 
     /**
-     * @param id ID of the user
-     * @return JsonObject with Personality, Username, UserId, Path to Music-Track
+     * @param id ID of the user, or the query of the explore page if after or limit is given
+     * @param after cursor returned as next by the previous page, missing for the first page
+     * @param limit maximal number of users of the page (explore page)
+     * @return JsonObject with Personality, Username, UserId, Path to Music-Track;
+     * for explore pages (see doMusicGetForExplore()): users and the cursor of the next page (next, null on the last page)
      */
     @GET
     @Path("{id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response doMusicGet(@PathParam("id") String id) {
-        return Response.ok().entity(new GsonBuilder().create().toJson(userManager.retrieve(id))).build();
+    public Response doMusicGet(@PathParam("id") String id, @QueryParam("after") String after, @QueryParam("limit") Integer limit) {
+        if (after == null && limit == null)
+            return Response.ok().entity(new GsonBuilder().create().toJson(userManager.retrieve(id))).build();
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        try {
+            ExploreCursor cursor = after == null || after.isEmpty() ? null : ExploreCursor.decode(after);
+            return Response.ok(new GsonBuilder().create().toJson(userManager.retrieveAfter(id, cursor, pageSize))).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Bad input (invalid cursor)").build();
+        }
     }
 
     /**
      *
      * @param filepath Path to the files belonging to the user
      * @return ok if no error occurred
+     *
+     * Makes sure the video of the user (see VideoCache) is available in /mnt/personality_videos
      */
     @GET
     @Path("video/{filepath}")
     @Produces(MediaType.TEXT_PLAIN)
     public Response getVideo(@PathParam("filepath") String filepath) {
-        if(generateVideo(filepath))
+        if (filepath.contains("/") || filepath.contains(".."))
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        try {
+            videoCache.getVideo(filepath);
             return Response.ok().type(MediaType.TEXT_PLAIN).build();
-        return Response.serverError().build();
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            return Response.serverError().build();
+        }
     }
 
     /**
-     * Generates a video by merging the generated track and the generated image of the user
      * @param filepath Path to the files belonging to the user
-     * @return true if no error occurred
+     * @return the users mp3, streamed while it is still being encoded (the stream ends once the encoding is complete)
      */
-    private boolean generateVideo(String filepath) {
-        try {
-            String[] command = {
-//                    "/bin/bash",
-                    "ffmpeg",
-                    "-i",
-                    String.format("/mnt/personality_images/%s.png", filepath),
-                    "-i",
-                    String.format("/mnt/personality_music/%s.mp3", filepath),
-                    "-strict",
-                    "-2",
-                    "-c:v",
-                    "libx264",
-                    "-pix_fmt",
-                    "yuv420p",
-                    String.format("/mnt/personality_videos/%s.mp4", filepath),
-                    "-y"
-            };
-            Process videoGenerator = Runtime.getRuntime().exec(command);
-            int exitStatus = videoGenerator.waitFor();
-
-            if(exitStatus != 0)
-                return false;
-
-            new Thread(() -> {
-                try {
-                    TimeUnit.MINUTES.sleep(10);
-                    Process videoDeleter = Runtime.getRuntime().exec(String.format("rm \"/mnt/personality_videos/%s.mp4\"", filepath));
-                    videoDeleter.waitFor();
-                } catch (InterruptedException | IOException e) {
-                    e.printStackTrace();
+    @GET
+    @Path("stream/{filepath}")
+    @Produces("audio/mpeg")
+    public Response getStream(@PathParam("filepath") String filepath) {
+        if (filepath.contains("/") || filepath.contains(".."))
+            return Response.status(Response.Status.BAD_REQUEST).build();
+
+        ProgressiveFile stream = audioStreams.get(filepath);
+        File file = new File(String.format("/mnt/personality_music/%s.mp3", filepath));
+        InputStream in = openStream(stream, file);
+        if (in == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        StreamingOutput output = out -> {
+            try (InputStream mp3 = in) {
+                byte[] buffer = new byte[16 * 1024];
+                int read;
+                while ((read = mp3.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    out.flush();
                 }
-            }).start();
-            Runtime.getRuntime().exec(new String[]{"/bin/bash", "-c", "chmod -R 777 /mnt/personality_videos"});
-            return true;
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-            return false;
+            }
+        };
+        return Response.ok(output, "audio/mpeg").build();
+    }
+
+    /**
+     * @return a reader of the mp3 that is being encoded, the finished mp3 if there is none (or the encoding finished
+     * in the meantime), null if neither exists
+     */
+    private static InputStream openStream(ProgressiveFile stream, File file) {
+        if (stream != null) {
+            try {
+                return stream.openReader();
+            } catch (IOException e) {
+                // the part file was moved to the mp3 already
+            }
+        }
+        try {
+            return file.isFile() ? new FileInputStream(file) : null;
+        } catch (IOException e) {
+            return null;
         }
     }
 
     /**
      * @param answer Answers the user has given plus the Username and the ID
-     * @return JSON-Object with the personality of the user represented by the Big-Five (see Wikipedia for more)
+     * @return 202 with the ID of the job that evaluates the users personality (see getJob())
      *
-     * Evaluates the users personality and creates music based on the values.
+     * Queues the evaluation of the users personality and the creation of music based on the values.
      * An image containing a visualisation of the personality is generated too.
      */
     @POST
@@ -130,122 +187,183 @@ public class MusicEndpoint {
             return Response.notModified("Bad input (number of elements != total number of questions (" + totalNumberOfQuestions + ")").build();
         }
 
-        double[] answerNumbers = new double[answer.size() - 2];
+        StringJoiner answerNumbers = new StringJoiner(",");
         String userID = answer.getString("" + (answer.size() - 1));
         String userName = answer.getString("" + (answer.size() - 2));
 
-        for (int i = 0; i < answerNumbers.length; i++) {
-            answerNumbers[i] = Integer.parseInt(answer.getString("" + i));
+        try {
+            for (int i = 0; i < answer.size() - 2; i++) {
+                answerNumbers.add("" + Integer.parseInt(answer.getString("" + i)));
+            }
+        } catch (NumberFormatException | NullPointerException | ClassCastException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Bad input (answers have to be numbers)").build();
         }
 
-        double[] values = evaluator.getOutputs(answerNumbers);
-        File musicFile = createMusicFile(userName, userID, values);
-        User user = storeUser(userID, userName, musicFile.getName().substring(0, musicFile.getName().length() - 4), values);
-        personalityImageGenerator.generatePersonalityImage(user);
+        MusicJob job = jobManager.store(new MusicJob(UUID.randomUUID().toString(), userID, userName, answerNumbers.toString()));
+        jobScheduler.schedule(job.getJobId());
 
-        return Response.ok().entity(new GsonBuilder()
-                .create()
-                .toJson(user))
+        return Response.accepted()
+                .entity(new GsonBuilder().create().toJson(jobStatus(job)))
+                .location(uriInfo.getBaseUriBuilder().path(MusicEndpoint.class).path("jobs").path(job.getJobId()).build())
                 .type(MediaType.APPLICATION_JSON)
                 .build();
     }
 
     /**
+     * @param batch JsonArray of answer sets, every answer set is a JsonArray of the answer values in the order of the questions
+     * @return JsonObject with the version of the factors and the personality values of every answer set
      *
-     * @param userName name of the user
-     * @param userID id of the user (if already in database)
-     * @param values the evaluated values of the users personality
-     * @return the users generated music-file
-     *
-     * Creates a music-file based on the users personality.
+     * Evaluates many answer sets at once without creating music, images or users (e.g. to re-score stored answers).
+     * At most musicmind.evaluate.maxBatchSize answer sets are accepted per request.
      */
-    private File createMusicFile(String userName, String userID, double[] values) {
-        File musicTrack = convertToMP3(findFileForUser(values));
-        String MUSIC_PATH = "/mnt/personality_music";
-        File destination = new File(MUSIC_PATH + "/" + userID.hashCode() + "_" + userName + ".mp3");
-
+    @POST
+    @Path("evaluate/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doEvaluateBatchPost(JsonArray batch) {
+        if (batch.size() > MAX_BATCH_SIZE)
+            return Response.status(Response.Status.BAD_REQUEST).entity("Bad input (at most " + MAX_BATCH_SIZE + " answer sets per batch)").build();
+        double[][] inputs;
         try {
-            Files.move(musicTrack.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            e.printStackTrace();
+            inputs = new GsonBuilder().create().fromJson(batch.toString(), double[][].class);
+        } catch (JsonSyntaxException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Bad input (expected an array of answer arrays)").build();
         }
-        return destination;
+
+        ScoringKernel kernel = evaluator.getKernel();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("factorVersion", kernel.getVersion());
+        result.put("values", kernel.score(inputs));
+        return Response.ok().entity(new GsonBuilder().create().toJson(result)).build();
     }
 
     /**
+     * @param id ID of the questionnaire session (chosen by the client)
+     * @param answers answers to add or replace: index of the question -> answer value (0 to 4)
+     * @return JsonObject with the number of answered questions and the provisional personality values
      *
-     * @param values the evaluated values of the users personality
-     * @return the users music-file
-     *
-     * Merges single music-tracks to one big music-file based on the users personality
+     * Answers questions of a questionnaire one at a time (or in small batches). The session is created with the first answer.
      */
-    private File findFileForUser(double[] values) {
-        //TODO FIND SPECIFIC FILE FOR USER
+    @POST
+    @Path("session/{id}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doSessionPost(@PathParam("id") String id, JsonObject answers) {
+        ScoringSession session = sessionManager.getOrCreate(id);
+        if (session == null)
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Too many open sessions").build();
 
-        Random rand = new Random();
-        String MIDI_PATH = "/mnt/generated_tracks";
+        try {
+            for (Map.Entry<String, JsonValue> answer : answers.entrySet()) {
+                JsonValue value = answer.getValue();
+                double number = value instanceof JsonNumber ? ((JsonNumber) value).doubleValue() : Integer.parseInt(((JsonString) value).getString());
+                session.answer(Integer.parseInt(answer.getKey()), number);
+            }
+        } catch (IllegalArgumentException | ClassCastException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Bad input (" + e.getMessage() + ")").build();
+        }
+        return Response.ok().entity(new GsonBuilder().create().toJson(sessionStatus(session))).build();
+    }
 
-        File genreAndInstrumentsFolder = Objects.requireNonNull(new File(MIDI_PATH).listFiles())[Math.abs(rand.nextInt()) % Objects.requireNonNull(new File(MIDI_PATH).listFiles()).length];
-        return Objects.requireNonNull(genreAndInstrumentsFolder.listFiles())[Math.abs(rand.nextInt()) % Objects.requireNonNull(genreAndInstrumentsFolder.listFiles()).length];
+    /**
+     * @param id ID of the questionnaire session
+     * @return JsonObject with the number of answered questions and the provisional personality values
+     */
+    @GET
+    @Path("session/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doSessionGet(@PathParam("id") String id) {
+        ScoringSession session = sessionManager.retrieve(id);
+        if (session == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        return Response.ok().entity(new GsonBuilder().create().toJson(sessionStatus(session))).build();
     }
 
     /**
-     *
-     * @param toConvert file to convert (has to be .mid-format)
-     * @return converted file (has .mp3-format)
-     *
-     * Converts a MIDI-File to a mp3 using timidity
+     * @param id ID of the questionnaire session, every question has to be answered
+     * @param user object:
+     *             - userName = name of the user
+     *             - userId = id of the user
+     * @return 202 with the ID of the job that creates the music (see getJob()), the answers are not evaluated again
      */
-    private File convertToMP3(File toConvert) {
-        try {
-            System.out.println("Converting " + toConvert.getAbsolutePath());
-            File tmp = new File(toConvert.getAbsolutePath().substring(0, toConvert.getAbsolutePath().length() - 4) + ".mp3");
-            Process p = Runtime.getRuntime().exec(new String[]{"/bin/bash", "-c", String.format("timidity %s -Ow -o - | lame - -b 64 %s", toConvert.getAbsolutePath(), tmp.getAbsolutePath())});
-            p.waitFor();
-            return tmp;
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-            return toConvert;
-        }
+    @POST
+    @Path("session/{id}/submit")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doSessionSubmitPost(@PathParam("id") String id, JsonObject user) {
+        ScoringSession session = sessionManager.retrieve(id);
+        if (session == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        if (!session.isComplete())
+            return Response.status(Response.Status.CONFLICT).entity(new GsonBuilder().create().toJson(sessionStatus(session))).build();
+
+        String userID = user.getString("userId", null);
+        String userName = user.getString("userName", null);
+        if (userID == null || userName == null)
+            return Response.status(Response.Status.BAD_REQUEST).entity("Bad input (userId and userName are required)").build();
+
+        MusicJob job = new MusicJob(UUID.randomUUID().toString(), userID, userName, session.getAnswers());
+        job.evaluated(session.getValues(), session.getFactorVersion());
+        job = jobManager.store(job);
+        sessionManager.remove(id);
+        jobScheduler.schedule(job.getJobId());
+
+        return Response.accepted()
+                .entity(new GsonBuilder().create().toJson(jobStatus(job)))
+                .location(uriInfo.getBaseUriBuilder().path(MusicEndpoint.class).path("jobs").path(job.getJobId()).build())
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    private Map<String, Object> sessionStatus(ScoringSession session) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("sessionId", session.getSessionId());
+        status.put("answered", session.getNumberOfAnswered());
+        status.put("total", session.getNumberOfQuestions());
+        status.put("complete", session.isComplete());
+        status.put("values", session.getValues());
+        return status;
     }
 
     /**
-     *
-     * @param userName name of the user
-     * @param userID id of the user (if already in database)
-     * @param values the evaluated values of the users personality
-     * @param fileName the users music-file
-     * @return the user which was stored in the database
-     *
-     * Stores an user in the database along with the path to his music-file
+     * @param id ID of the job returned by doMusicPost()
+     * @return JsonObject with the stage and progress of the job, contains the user once the job is done
      */
-    private User storeUser(String userID, String userName, String fileName, double[] values) {
-        User user = userManager.retrieve(userID);
-        if (user == null)
-            user = new User(userID, userName, fileName, values[4], values[1], values[3], values[2], values[0]);
-        else {
-            user.setAgreeableness(values[2]);
-            user.setConscientiousness(values[1]);
-            user.setExtraversion(values[3]);
-            user.setNeuroticism(values[0]);
-            user.setOpenness(values[4]);
-            user.setUserName(userName);
-            user.setPlays(0);
-            user.setShares(0);
-            user.setFilename(fileName);
-        }
+    @GET
+    @Path("jobs/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getJob(@PathParam("id") String id) {
+        MusicJob job = jobManager.retrieve(id);
+        if (job == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        return Response.ok().entity(new GsonBuilder().create().toJson(jobStatus(job))).build();
+    }
 
-        return userManager.store(user);
+    private Map<String, Object> jobStatus(MusicJob job) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("jobId", job.getJobId());
+        status.put("stage", job.getStage());
+        status.put("progress", job.getStage().getProgress());
+        if (job.getStage() != JobStage.QUEUED && job.getStage() != JobStage.FAILED)
+            status.put("stream", String.format("music/stream/%d_%s", job.getUserId().hashCode(), job.getUserName()));
+        if (job.getStage() == JobStage.DONE)
+            status.put("user", userManager.retrieve(job.getUserId()));
+        else if (job.getStage() == JobStage.FAILED)
+            status.put("error", job.getError());
+        return status;
     }
 
     /**
      * @param query Fixed Keywords:
      *              - newest
      *              - hottest
+     *              - trending
      *              - everything else: name of the user or music-track
      * @param min   First Track to return
      * @param max   Last track to return
      * @return JsonArray of doMusicGet() with all Users (between min and max)
+     * For infinite scrolling use GET music/{query}?after={cursor}&limit={n} (see doMusicGet()), deep pages stay cheap.
      */
     @GET
     @Path("{query}/{min}/{max}")
@@ -267,9 +385,7 @@ public class MusicEndpoint {
 
         if (playsManager.retrieve(play) == null) {
             playsManager.store(play);
-            User u = userManager.retrieve(play.getPlayed());
-            u.setPlays(u.getPlays() + 1);
-            userManager.store(u);
+            counterBuffer.recordPlay(play.getPlayed());
         }
         return Response.noContent().build();
     }
@@ -287,9 +403,7 @@ public class MusicEndpoint {
 
         if (sharesManager.retrieve(share) == null) {
             sharesManager.store(share);
-            User u = userManager.retrieve(share.getShared());
-            u.setShares(u.getShares() + 1);
-            userManager.store(u);
+            counterBuffer.recordShare(share.getShared());
         }
         return Response.noContent().build();
     }
@@ -1,9 +1,12 @@
 package com.musicmindproject.backend.rest.endpoints;
 
+import com.google.gson.GsonBuilder;
+import com.musicmindproject.backend.logic.database.QuestionCatalogCache;
 import com.musicmindproject.backend.logic.database.QuestionManager;
 
 import javax.inject.Inject;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -14,6 +17,9 @@ import javax.ws.rs.core.Response;
 public class QuestionEndpoint {
     @Inject
     private QuestionManager questionManager;
+    @Inject
+    private QuestionCatalogCache catalogCache;
+
     /**
      * @return the total count of all questions
      */
@@ -24,6 +30,29 @@ public class QuestionEndpoint {
         return Response.ok(questionManager.getNumberOfAvailableQuestions()).build();
     }
 
+    /**
+     * @param lang language of the questions
+     * @return JsonArray with the texts of all questions (ordered by their ID) translated in the wanted language
+     */
+    @GET
+    @Path("all/{lang}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doAllQuestionsGet(@PathParam("lang") String lang) {
+        return Response.ok(new GsonBuilder().create().toJson(questionManager.retrieveMany(0, Integer.MAX_VALUE, lang))).build();
+    }
+
+    /**
+     * Reloads all questions from the database
+     * @return no content if the questions were reloaded, server error otherwise
+     */
+    @POST
+    @Path("reload")
+    public Response doReloadPost() {
+        if (catalogCache.reload())
+            return Response.noContent().build();
+        return Response.serverError().build();
+    }
+
     /**
      * @param qId ID of the question
      * @param lang language of the question
@@ -0,0 +1,25 @@
+-- Changes to the schema of an existing MusicMind database (MySQL), in the order they were introduced.
+-- create.sql is not part of this repository; run these statements once on databases created before the change.
+
+-- version of the factors the personality of an user was evaluated with
+ALTER TABLE USER ADD COLUMN FACTOR_VERSION VARCHAR(255);
+
+-- music-jobs (asynchronous personality submissions)
+CREATE TABLE IF NOT EXISTS MUSIC_JOB (
+    JOB_ID VARCHAR(255) NOT NULL PRIMARY KEY,
+    USERID VARCHAR(255),
+    USERNAME VARCHAR(255),
+    ANSWERS LONGTEXT,
+    PERSONALITY VARCHAR(255),
+    FACTOR_VERSION VARCHAR(255),
+    PATH VARCHAR(255),
+    STAGE VARCHAR(32),
+    ATTEMPTS INT NOT NULL DEFAULT 0,
+    ERROR TEXT,
+    DATE_OF_CREATION TIMESTAMP NULL,
+    LAST_UPDATE TIMESTAMP NULL,
+    INDEX MUSIC_JOB_STAGE (STAGE, DATE_OF_CREATION)
+);
+
+-- trending score (log space, see TrendingIndex) stored with the counts, the index is seeded with it at startup
+ALTER TABLE USER ADD COLUMN TRENDING_SCORE DOUBLE NULL;
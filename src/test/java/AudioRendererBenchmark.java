@@ -0,0 +1,73 @@
+import com.musicmindproject.backend.logic.audio.AudioRenderer;
+import com.musicmindproject.backend.logic.audio.JavaSoundRenderer;
+import com.musicmindproject.backend.logic.audio.TimidityRenderer;
+import com.musicmindproject.backend.logic.process.ProcessRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Compares throughput and latency of the renderers (not run by surefire, needs timidity and lame).
+ * Usage: AudioRendererBenchmark <directory with MIDI-files> [threads] [rounds]
+ * The JavaSoundRenderer needs --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED on Java 9+.
+ */
+public class AudioRendererBenchmark {
+    public static void main(String[] args) throws Exception {
+        File[] midiFiles = new File(args[0]).listFiles((dir, name) -> name.endsWith(".mid"));
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        if (midiFiles == null || midiFiles.length == 0) {
+            System.err.println("No MIDI-files in " + args[0]);
+            return;
+        }
+
+        ProcessRunner processRunner = new ProcessRunner();
+        List<AudioRenderer> renderers = new ArrayList<>();
+        renderers.add(new TimidityRenderer(processRunner));
+        if (JavaSoundRenderer.isAvailable())
+            renderers.add(new JavaSoundRenderer(processRunner));
+        else
+            System.err.println("JavaSoundRenderer is not available in this JVM");
+
+        for (AudioRenderer renderer : renderers) {
+            run(renderer, midiFiles, threads, 1); // warm up
+            run(renderer, midiFiles, threads, rounds);
+        }
+        processRunner.shutdown();
+    }
+
+    private static void run(AudioRenderer renderer, File[] midiFiles, int threads, int rounds) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> latencies = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (File midi : midiFiles) {
+                latencies.add(executor.submit(() -> {
+                    File target = File.createTempFile("benchmark", ".mp3");
+                    long begin = System.nanoTime();
+                    try (OutputStream out = new FileOutputStream(target)) {
+                        renderer.render(midi, out);
+                        return System.nanoTime() - begin;
+                    } finally {
+                        target.delete();
+                    }
+                }));
+            }
+        }
+        long[] nanos = new long[latencies.size()];
+        for (int i = 0; i < nanos.length; i++)
+            nanos[i] = latencies.get(i).get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+
+        Arrays.sort(nanos);
+        System.out.printf("%s: %d files in %.1fs (%.2f files/s), latency p50 %.0fms, p95 %.0fms, max %.0fms%n",
+                renderer.getSettings(), nanos.length, seconds, nanos.length / seconds,
+                nanos[nanos.length / 2] / 1e6, nanos[(int) (nanos.length * 0.95)] / 1e6, nanos[nanos.length - 1] / 1e6);
+    }
+}
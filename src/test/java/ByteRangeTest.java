@@ -0,0 +1,51 @@
+import com.musicmindproject.backend.logic.media.ByteRange;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ByteRangeTest {
+    @Test
+    public void missingHeaderMeansWholeFile() {
+        ByteRange range = ByteRange.parse(null, 1000);
+        assertEquals(0, range.getFirst());
+        assertEquals(999, range.getLast());
+    }
+
+    @Test
+    public void closedAndOpenRanges() {
+        ByteRange closed = ByteRange.parse("bytes=100-199", 1000);
+        assertEquals(100, closed.getFirst());
+        assertEquals(100, closed.getLength());
+        assertEquals("bytes 100-199/1000", closed.toContentRange(1000));
+
+        ByteRange open = ByteRange.parse("bytes=900-", 1000);
+        assertEquals(900, open.getFirst());
+        assertEquals(999, open.getLast());
+
+        ByteRange clipped = ByteRange.parse("bytes=900-5000", 1000);
+        assertEquals(999, clipped.getLast());
+    }
+
+    @Test
+    public void suffixRange() {
+        ByteRange range = ByteRange.parse("bytes=-100", 1000);
+        assertEquals(900, range.getFirst());
+        assertEquals(999, range.getLast());
+        assertEquals(0, ByteRange.parse("bytes=-5000", 1000).getFirst());
+    }
+
+    @Test
+    public void unsatisfiableRanges() {
+        assertNull(ByteRange.parse("bytes=1000-", 1000));
+        assertNull(ByteRange.parse("bytes=500-100", 1000));
+        assertNull(ByteRange.parse("bytes=-0", 1000));
+    }
+
+    @Test
+    public void unsupportedHeadersAreIgnored() {
+        assertEquals(1000, ByteRange.parse("bytes=0-1,5-6", 1000).getLength());
+        assertEquals(1000, ByteRange.parse("items=0-1", 1000).getLength());
+        assertEquals(1000, ByteRange.parse("bytes=a-b", 1000).getLength());
+    }
+}
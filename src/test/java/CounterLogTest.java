@@ -0,0 +1,109 @@
+import com.musicmindproject.backend.logic.counters.CounterLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CounterLogTest {
+    private File directory;
+    private File file;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("counters").toFile();
+        file = new File(directory, "counters.log");
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null)
+            for (File f : files)
+                f.delete();
+        directory.delete();
+    }
+
+    /**
+     * Replays the log like the CounterBuffer does: userId -> {plays, shares}
+     */
+    private List<File> replay(Map<String, long[]> counts) throws IOException {
+        return new CounterLog(file).replay((type, userId, time) -> {
+            if (type == CounterLog.RESET) {
+                counts.remove(userId);
+                return;
+            }
+            long[] userCounts = counts.computeIfAbsent(userId, id -> new long[2]);
+            userCounts[type == CounterLog.PLAY ? 0 : 1]++;
+        });
+    }
+
+    @Test
+    public void replaysRotatedAndLiveLogsSkippingTornLines() throws Exception {
+        CounterLog log = new CounterLog(file);
+        log.open();
+        log.append(CounterLog.PLAY, "u1", 1);
+        log.append(CounterLog.PLAY, "u1", 2);
+        log.append(CounterLog.SHARE, "u2", 3);
+        log.append(CounterLog.PLAY, "u3", 4);
+        File rotated = log.rotate();
+        assertNotNull(rotated);
+
+        log.append(CounterLog.PLAY, "u2", 5);
+        log.append(CounterLog.RESET, "u3", 6);
+        log.append(CounterLog.SHARE, "u3", 7);
+        log.close();
+        // the process died while writing this line
+        Files.write(file.toPath(), "P\tu4\t12".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        Map<String, long[]> counts = new HashMap<>();
+        List<File> replayed = replay(counts);
+
+        assertArrayEquals(new long[]{2, 0}, counts.get("u1"));
+        assertArrayEquals(new long[]{1, 1}, counts.get("u2"));
+        assertArrayEquals(new long[]{0, 1}, counts.get("u3"));
+        assertFalse(counts.containsKey("u4"));
+        assertEquals(2, replayed.size());
+        assertEquals(rotated.getAbsoluteFile(), replayed.get(0));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void emptyLogIsNotRotated() throws Exception {
+        CounterLog log = new CounterLog(file);
+        log.open();
+        assertNull(log.rotate());
+        log.close();
+
+        Map<String, long[]> counts = new HashMap<>();
+        assertEquals(1, replay(counts).size());
+        assertTrue(counts.isEmpty());
+    }
+
+    @Test
+    public void eventsAfterReplayGoToANewLog() throws Exception {
+        CounterLog log = new CounterLog(file);
+        log.open();
+        log.append(CounterLog.PLAY, "u1", 1);
+        log.close();
+
+        CounterLog restarted = new CounterLog(file);
+        List<File> replayed = restarted.replay((type, userId, time) -> { });
+        restarted.open();
+        restarted.append(CounterLog.SHARE, "u1", 2);
+        restarted.close();
+        for (File f : replayed)
+            assertTrue(f.delete());
+
+        Map<String, long[]> counts = new HashMap<>();
+        replay(counts);
+        assertArrayEquals(new long[]{0, 1}, counts.get("u1"));
+    }
+}
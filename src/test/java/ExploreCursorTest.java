@@ -0,0 +1,24 @@
+import com.musicmindproject.backend.logic.ranking.ExploreCursor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExploreCursorTest {
+    @Test
+    public void cursorsSurviveEncoding() {
+        ExploreCursor cursor = ExploreCursor.decode(ExploreCursor.of(1527000000000L, "user1").encode());
+        assertEquals(1527000000000L, cursor.getLongKey());
+        assertEquals("user1", cursor.getUserId());
+
+        cursor = ExploreCursor.decode(new ExploreCursor("1:anna|bauer", "user2").encode());
+        assertEquals("1:anna|bauer", cursor.getKey());
+        assertEquals("user2", cursor.getUserId());
+
+        assertEquals(-12.5, ExploreCursor.decode(ExploreCursor.of(-12.5, "u").encode()).getDoubleKey(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCursorsAreRejected() {
+        ExploreCursor.decode("not a cursor");
+    }
+}
@@ -0,0 +1,83 @@
+import com.musicmindproject.backend.logic.search.NameIndex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class NameIndexTest {
+    private static NameIndex index(String... names) {
+        NameIndex index = new NameIndex();
+        for (int i = 0; i < names.length; i++)
+            index.update("user" + i, names[i], ("user" + i).hashCode() + "_" + names[i]);
+        return index;
+    }
+
+    @Test
+    public void resultsAreOrderedByRelevance() {
+        NameIndex index = index("Johanna Bauer", "Bauer", "Anna Bauer", "Bauerfeind", "Klaus");
+
+        assertEquals(Arrays.asList("user1", "user3", "user2", "user0"), index.search("bauer", 0, 10));
+        assertEquals(Arrays.asList("user3", "user2"), index.search("BAUER", 1, 3));
+        assertEquals(Collections.emptyList(), index.search("bauer", 4, 10));
+    }
+
+    @Test
+    public void substringsInsideWordsAreFound() {
+        NameIndex index = index("Johanna Bauer", "Anna Bauer", "Hannah");
+
+        assertEquals(Arrays.asList("user2", "user0"), index.search("hann", 0, 10));
+        assertEquals(Arrays.asList("user1", "user2", "user0"), index.search("anna", 0, 10));
+    }
+
+    @Test
+    public void shortQueriesMatchWordStarts() {
+        NameIndex index = index("Johanna Bauer", "Anna", "Bob");
+
+        assertEquals(Arrays.asList("user1"), index.search("a", 0, 10));
+        assertEquals(Arrays.asList("user2", "user0"), index.search("b", 0, 10));
+        assertEquals(Arrays.asList("user0"), index.search("ba", 0, 10));
+    }
+
+    @Test
+    public void updatesReplaceTheOldName() {
+        NameIndex index = index("Anna", "Klaus");
+        index.update("user0", "Maria", "0_Maria");
+
+        assertEquals(Collections.emptyList(), index.search("anna", 0, 10));
+        assertEquals(Arrays.asList("user0"), index.search("mari", 0, 10));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void filenameMatchesRankLast() {
+        NameIndex index = new NameIndex();
+        index.update("a", "Anna", "12345_Anna");
+        index.update("b", "12345 Fan", "999_12345 Fan");
+
+        assertEquals(Arrays.asList("b", "a"), index.search("12345", 0, 10));
+    }
+
+    private static List<String> userIds(List<NameIndex.Match> matches) {
+        List<String> userIds = new ArrayList<>();
+        for (NameIndex.Match match : matches)
+            userIds.add(match.getUserId());
+        return userIds;
+    }
+
+    @Test
+    public void pagesContinueAfterTheLastMatch() {
+        NameIndex index = index("Johanna Bauer", "Bauer", "Anna Bauer", "Bauerfeind", "Klaus");
+
+        List<NameIndex.Match> first = index.searchAfter("bauer", null, null, 2);
+        assertEquals(Arrays.asList("user1", "user3"), userIds(first));
+        NameIndex.Match last = first.get(1);
+
+        // a new better match doesn't shift the next page
+        index.update("user5", "Bauer", "5_Bauer");
+        assertEquals(Arrays.asList("user2", "user0"), userIds(index.searchAfter("bauer", last.getKey(), last.getUserId(), 5)));
+    }
+}
@@ -1,10 +1,105 @@
-import com.musicmindproject.backend.logic.PersonalityEvaluator;
+import com.musicmindproject.backend.logic.ScoringKernel;
+import com.musicmindproject.backend.logic.ScoringSession;
+import com.musicmindproject.backend.logic.database.FactorSnapshot;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 public class PersonalityEvaluatorTest {
+    private static final double[][] FACTORS = {
+            {0.5, -0.3, 0, 0.8, -0.1, 0.2},
+            {-0.4, 0.6, 0.1, 0, 0.3, -0.7},
+            {0.2, 0.2, -0.9, 0.4, 0, 0.1},
+            {0, -0.5, 0.5, -0.2, 0.6, 0.3},
+            {0.9, 0.1, 0.3, -0.6, -0.2, 0}
+    };
+
+    /**
+     * Straightforward evaluation, every category separately: negative factors reverse the answer (4 - answer), the
+     * weighted mean is clamped to 0..4 and mapped to 0..100.
+     * Unlike the evaluator before the kernel, a neutral answer (2) to a question with a negative factor counts as 2;
+     * the old evaluator mapped it to 0.
+     */
+    private static double[] reference(double[][] factors, double[] inputs) {
+        int[] outputIndex = {0, 3, 4, 2, 1};
+        double[] outputs = new double[5];
+        for (int type = 0; type < 5; type++) {
+            double productSum = 0;
+            double factorSum = 0;
+            for (int i = 0; i < inputs.length; i++) {
+                double factor = factors[type][i];
+                productSum += factor < 0 ? (4 - inputs[i]) * -factor : inputs[i] * factor;
+                factorSum += Math.abs(factor);
+            }
+            outputs[outputIndex[type]] = Math.min(Math.max(productSum / factorSum, 0), 4) * 25;
+        }
+        return outputs;
+    }
+
+    @Test
+    public void kernelMatchesReference() {
+        ScoringKernel kernel = ScoringKernel.compile(new FactorSnapshot(FACTORS));
+        Random random = new Random(42);
+
+        for (int run = 0; run < 100; run++) {
+            double[] inputs = new double[FACTORS[0].length];
+            for (int i = 0; i < inputs.length; i++)
+                inputs[i] = random.nextInt(5);
+            assertArrayEquals(reference(FACTORS, inputs), kernel.score(inputs), 1e-9);
+        }
+    }
+
+    @Test
+    public void batchMatchesSingleScores() {
+        ScoringKernel kernel = ScoringKernel.compile(new FactorSnapshot(FACTORS));
+        double[][] batch = {
+                {0, 1, 2, 3, 4, 0},
+                {4, 4, 4, 4, 4, 4},
+                {0, 0, 0, 0, 0, 0}
+        };
+
+        double[][] outputs = kernel.score(batch);
+        for (int i = 0; i < batch.length; i++)
+            assertArrayEquals(kernel.score(batch[i]), outputs[i], 0);
+    }
+
+    @Test
+    public void wrongNumberOfAnswers() {
+        ScoringKernel kernel = ScoringKernel.compile(new FactorSnapshot(FACTORS));
+        assertArrayEquals(new double[]{-1, -1, -1, -1, -1}, kernel.score(new double[]{1, 2, 3}), 0);
+    }
+
+    @Test
+    public void versionDependsOnFactors() {
+        double[][] changed = FACTORS.clone();
+        changed[0] = new double[]{0.5, -0.3, 0, 0.8, -0.1, 0.25};
+
+        assertEquals(new FactorSnapshot(FACTORS).getVersion(), new FactorSnapshot(FACTORS.clone()).getVersion());
+        assertNotEquals(new FactorSnapshot(FACTORS).getVersion(), new FactorSnapshot(changed).getVersion());
+    }
+
+    @Test
+    public void sessionMatchesFullScore() {
+        ScoringKernel kernel = ScoringKernel.compile(new FactorSnapshot(FACTORS));
+        ScoringSession session = new ScoringSession("test", kernel);
+        double[] inputs = {3, 0, 4, 1, 2, 4};
+
+        for (int i = inputs.length - 1; i >= 0; i--)
+            session.answer(i, 4 - inputs[i]);
+        for (int i = 0; i < inputs.length; i++)
+            session.answer(i, inputs[i]);
 
+        assertTrue(session.isComplete());
+        assertArrayEquals(kernel.score(inputs), session.getValues(), 1e-9);
+    }
 
-}
\ No newline at end of file
+    @Test(expected = IllegalArgumentException.class)
+    public void sessionRejectsFractionalAnswers() {
+        new ScoringSession("test", ScoringKernel.compile(new FactorSnapshot(FACTORS))).answer(0, 2.5);
+    }
+}
@@ -0,0 +1,58 @@
+import com.musicmindproject.backend.logic.images.PersonalityImageRenderer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Throughput and garbage per image of the personality image renderer compared to drawing every image from scratch
+ * (not run by surefire). Usage: PersonalityImageBenchmark [images] [output directory]
+ * The PNG compression is set with -Dmusicmind.images.pngLevel and -Dmusicmind.images.pngSubFilter.
+ */
+public class PersonalityImageBenchmark {
+    private interface Job {
+        void run(double[] values, File output) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int images = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        File directory = args.length > 1 ? new File(args[1]) : new File(System.getProperty("java.io.tmpdir"));
+        BufferedImage[] icons = PersonalityImageRendererTest.testIcons();
+        PersonalityImageRenderer renderer = new PersonalityImageRenderer(icons);
+
+        run("legacy render", images, directory, false, (values, output) -> PersonalityImageRendererTest.reference(icons, values));
+        run("template render", images, directory, false, (values, output) -> renderer.render(values));
+        run("legacy render + png", images, directory, true, (values, output) -> ImageIO.write(PersonalityImageRendererTest.reference(icons, values), "png", output));
+        run("template render + png", images, directory, true, renderer::writePng);
+    }
+
+    private static void run(String name, int images, File directory, boolean write, Job job) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Random random = new Random(1);
+        File output = new File(directory, "benchmark.png");
+
+        for (int i = 0; i < images / 4; i++) // warm up
+            job.run(values(random), output);
+
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < images; i++)
+            job.run(values(random), output);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+        System.out.printf("%s: %.1f images/s, %.1f KB garbage per image%s%n", name, images / seconds,
+                allocated / 1024.0 / images, write ? String.format(", %d KB per png", output.length() / 1024) : "");
+        output.delete();
+    }
+
+    private static double[] values(Random random) {
+        double[] values = new double[5];
+        for (int i = 0; i < values.length; i++)
+            values[i] = random.nextDouble() * 100;
+        return values;
+    }
+}
@@ -0,0 +1,111 @@
+import com.musicmindproject.backend.logic.images.PersonalityImageRenderer;
+import com.musicmindproject.backend.logic.images.PersonalitySvgRenderer;
+import com.musicmindproject.backend.logic.images.PngEncoder;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static com.musicmindproject.backend.logic.images.PersonalityImageRenderer.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PersonalityImageRendererTest {
+    /**
+     * Icons with a different colour each, 48x48 like the material icons
+     */
+    static BufferedImage[] testIcons() {
+        BufferedImage[] icons = new BufferedImage[ICON_NAMES.length];
+        for (int i = 0; i < icons.length; i++) {
+            icons[i] = new BufferedImage(48, 48, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = icons[i].createGraphics();
+            graphics.setColor(new Color(20 * i, 255 - 20 * i, 128, 200));
+            graphics.fillOval(4, 4, 40, 40);
+            graphics.dispose();
+        }
+        return icons;
+    }
+
+    /**
+     * Image as it was drawn before the renderer: everything drawn per image
+     */
+    static BufferedImage reference(BufferedImage[] icons, double[] values) {
+        BufferedImage image = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphic2D = image.createGraphics();
+        int iconSize = icons[0].getHeight();
+        graphic2D.setStroke(new BasicStroke(BORDER_WIDTH));
+        for (int i = 0; i < PERSONALITY_COLORS.length; i++) {
+            int rightIconX = (SIDE - iconSize) / 2;
+            int leftIconX = IMAGE_WIDTH - (rightIconX + iconSize);
+            int iconY = (TOP + i * (BORDER_WIDTH + BAR_HEIGHT + BETWEEN)) + (BAR_HEIGHT - iconSize) / 2;
+            int barBorderY = TOP + i * (BORDER_WIDTH + BAR_HEIGHT + BETWEEN);
+            int barX = SIDE + BORDER_WIDTH / 2;
+            int barY = TOP + BORDER_WIDTH / 2 + i * (BORDER_WIDTH + BAR_HEIGHT + BETWEEN);
+            int barWidth = (int) (BAR_WIDTH * (values[i] / 100));
+
+            graphic2D.drawImage(icons[i * 2], rightIconX, iconY, null);
+            graphic2D.setPaint(BORDER_COLOR);
+            graphic2D.drawRect(SIDE, barBorderY, BAR_WIDTH + BORDER_WIDTH, BAR_HEIGHT + BORDER_WIDTH);
+            graphic2D.setPaint(PERSONALITY_COLORS[i]);
+            graphic2D.fillRect(barX, barY, barWidth, BAR_HEIGHT);
+            graphic2D.drawImage(icons[i * 2 + 1], leftIconX, iconY, null);
+        }
+        graphic2D.dispose();
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT, null, 0, IMAGE_WIDTH);
+    }
+
+    @Test
+    public void matchesReference() {
+        BufferedImage[] icons = testIcons();
+        PersonalityImageRenderer renderer = new PersonalityImageRenderer(icons);
+        Random random = new Random(7);
+
+        double[][] cases = {{0, 0, 0, 0, 0}, {100, 100, 100, 100, 100}, new double[5]};
+        for (int i = 0; i < 5; i++)
+            cases[2][i] = random.nextDouble() * 100;
+        for (double[] values : cases)
+            assertArrayEquals(pixels(reference(icons, values)), pixels(renderer.render(values)));
+    }
+
+    @Test
+    public void encodedPngDecodesToSameImage() throws IOException {
+        PersonalityImageRenderer renderer = new PersonalityImageRenderer(testIcons());
+        BufferedImage image = renderer.render(new double[]{10, 30, 50, 70, 90});
+
+        for (boolean subFilter : new boolean[]{true, false}) {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            new PngEncoder(6, subFilter).write(image, png);
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+            assertArrayEquals(pixels(image), pixels(decoded));
+        }
+    }
+
+    @Test
+    public void svgEmbedsIconsOnce() throws Exception {
+        byte[][] icons = new byte[ICON_NAMES.length][];
+        for (int i = 0; i < icons.length; i++) {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(testIcons()[i], "png", png);
+            icons[i] = png.toByteArray();
+        }
+        String svg = new PersonalitySvgRenderer(icons, 48).render(new double[]{0, 25, 50, 75, 100});
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(ICON_NAMES.length, document.getElementsByTagName("symbol").getLength());
+        assertEquals(ICON_NAMES.length, document.getElementsByTagName("use").getLength());
+        assertTrue(svg.contains(String.format("width=\"%d\" height=\"%d\" fill=\"#3498DB\"", BAR_WIDTH, BAR_HEIGHT)));
+    }
+}
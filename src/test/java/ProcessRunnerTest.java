@@ -0,0 +1,194 @@
+import com.musicmindproject.backend.logic.process.ProcessRequest;
+import com.musicmindproject.backend.logic.process.ProcessResult;
+import com.musicmindproject.backend.logic.process.ProcessRunner;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ProcessRunnerTest {
+    private final ProcessRunner runner = new ProcessRunner();
+
+    /**
+     * Process that prints the given output and exits with the given code after the given time
+     */
+    private static class FakeProcess extends Process {
+        private final InputStream stdout;
+        private final CountDownLatch exited = new CountDownLatch(1);
+        private volatile int exitCode;
+
+        FakeProcess(String output, int exitCode, long millis, Runnable onExit) {
+            this.stdout = new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8));
+            this.exitCode = exitCode;
+            Thread timer = new Thread(() -> {
+                try {
+                    exited.await(millis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                onExit.run();
+                exited.countDown();
+            });
+            timer.setDaemon(true);
+            timer.start();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return stdout;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            exited.await();
+            return exitCode;
+        }
+
+        @Override
+        public int exitValue() {
+            if (exited.getCount() > 0)
+                throw new IllegalThreadStateException();
+            return exitCode;
+        }
+
+        @Override
+        public void destroy() {
+            exitCode = 137;
+            exited.countDown();
+        }
+    }
+
+    @After
+    public void shutdown() {
+        runner.shutdown();
+    }
+
+    @Test
+    public void capturesOutputAndExitCode() throws Exception {
+        runner.setLauncher("fake", (command, directory) -> new FakeProcess("hello", 3, 0, () -> {}));
+
+        ProcessResult result = runner.run(new ProcessRequest("fake", "fake")).get();
+        assertEquals(3, result.getExitCode());
+        assertEquals("hello", result.getOutput());
+        assertEquals(1, runner.getToolStatistics("fake").getFailures());
+        assertEquals(Long.valueOf(1), runner.getToolStatistics("fake").getExitCodes().get(3));
+    }
+
+    @Test
+    public void streamsOutput() throws Exception {
+        runner.setLauncher("fake", (command, directory) -> new FakeProcess("mp3", 0, 0, () -> {}));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        runner.runAndWait(new ProcessRequest("fake", "fake").output(out));
+        assertEquals("mp3", out.toString("UTF-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void failedProcessThrows() throws Exception {
+        runner.setLauncher("fake", (command, directory) -> new FakeProcess("", 1, 0, () -> {}));
+        runner.runAndWait(new ProcessRequest("fake", "fake"));
+    }
+
+    @Test
+    public void killsProcessAfterTimeout() throws Exception {
+        runner.setLauncher("fake", (command, directory) -> new FakeProcess("", 0, 10_000, () -> {}));
+
+        try {
+            runner.run(new ProcessRequest("fake", "fake").timeout(100, TimeUnit.MILLISECONDS)).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(1, runner.getToolStatistics("fake").getTimeouts());
+        assertEquals(0, runner.getToolStatistics("fake").getRunning());
+    }
+
+    @Test
+    public void limitsConcurrencyPerTool() throws Exception {
+        System.setProperty("musicmind.process.limited.concurrency", "1");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        runner.setLauncher("limited", (command, directory) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            return new FakeProcess("", 0, 50, running::decrementAndGet);
+        });
+
+        List<CompletableFuture<ProcessResult>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            results.add(runner.run(new ProcessRequest("limited", "limited")));
+        for (CompletableFuture<ProcessResult> result : results)
+            assertTrue(result.get().isSuccess());
+        assertEquals(1, maxRunning.get());
+        assertEquals(3, runner.getToolStatistics("limited").getRuns());
+    }
+
+    @Test
+    public void cancelledRequestsAreNotStarted() throws Exception {
+        System.setProperty("musicmind.process.single.concurrency", "1");
+        AtomicInteger launched = new AtomicInteger();
+        runner.setLauncher("single", (command, directory) -> {
+            launched.incrementAndGet();
+            return new FakeProcess("", 0, 200, () -> {});
+        });
+
+        CompletableFuture<ProcessResult> first = runner.run(new ProcessRequest("single", "single"));
+        Thread.sleep(50);
+        ProcessRequest waiting = new ProcessRequest("single", "single");
+        CompletableFuture<ProcessResult> second = runner.run(waiting);
+        waiting.cancel();
+
+        assertTrue(first.get().isSuccess());
+        try {
+            second.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(1, launched.get());
+    }
+
+    @Test
+    public void processGroupsRunWithSetsid() {
+        assertEquals("setsid", new ProcessRequest("tool", "bash", "-c", "true").processGroup().getCommand().get(0));
+        assertEquals("bash", new ProcessRequest("tool", "bash", "-c", "true").getCommand().get(0));
+    }
+
+    @Test
+    public void pipeFailsIfTheSourceFails() throws Exception {
+        runner.setLauncher("source", (command, directory) -> new FakeProcess("wav", 1, 0, () -> {}));
+        runner.setLauncher("sink", (command, directory) -> new FakeProcess("mp3", 0, 0, () -> {}));
+
+        try {
+            runner.pipeAndWait(new ProcessRequest("source", "source"), new ProcessRequest("sink", "sink").output(new ByteArrayOutputStream()));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("source"));
+        }
+    }
+
+    @Test
+    public void pipeReturnsTheResultOfTheSink() throws Exception {
+        runner.setLauncher("source", (command, directory) -> new FakeProcess("wav", 0, 0, () -> {}));
+        runner.setLauncher("sink", (command, directory) -> new FakeProcess("mp3", 0, 20, () -> {}));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        runner.pipeAndWait(new ProcessRequest("source", "source"), new ProcessRequest("sink", "sink").output(out));
+        assertEquals("mp3", out.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,74 @@
+import com.musicmindproject.backend.logic.ranking.RankedFeed;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RankedFeedTest {
+    private static List<RankedFeed.Entry> entries(long... ranks) {
+        List<RankedFeed.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < ranks.length; i++)
+            entries.add(new RankedFeed.Entry(ranks[i], "user" + i));
+        return entries;
+    }
+
+    @Test
+    public void pagesAreOrderedByRankThenId() {
+        RankedFeed feed = new RankedFeed(10);
+        feed.rebuild(entries(5, 9, 5, 1), true);
+
+        assertEquals(Arrays.asList("user1", "user0", "user2", "user3"), feed.page(0, 4));
+        assertEquals(Arrays.asList("user0", "user2"), feed.page(1, 3));
+        assertEquals(Arrays.asList("user3"), feed.page(3, 10));
+    }
+
+    @Test
+    public void incompleteFeedOnlyAnswersPagesItCovers() {
+        RankedFeed feed = new RankedFeed(3);
+        feed.rebuild(entries(9, 8, 7, 6), false);
+
+        assertEquals(3, feed.size());
+        assertNotNull(feed.page(0, 3));
+        assertNull(feed.page(0, 4));
+    }
+
+    @Test
+    public void updatesKeepTheTrueTop() {
+        RankedFeed feed = new RankedFeed(3);
+        feed.rebuild(entries(9, 8, 7, 6), false);
+
+        // unknown users behind the last entry must not be added
+        assertFalse(feed.update("outside", 6));
+        // a user overtaking the last entry pushes it out
+        assertTrue(feed.update("outside", 10));
+        assertEquals(Arrays.asList("outside", "user0", "user1"), feed.page(0, 3));
+        // a user falling behind the last entry is removed, the feed shrinks
+        assertFalse(feed.update("user0", 0));
+        assertEquals(Arrays.asList("outside", "user1"), feed.page(0, 2));
+        assertNull(feed.page(0, 3));
+    }
+
+    @Test
+    public void cursorContinuesAfterLastEntry() {
+        RankedFeed feed = new RankedFeed(10);
+        feed.rebuild(entries(5, 9, 5, 1), true);
+
+        assertEquals(Arrays.asList("user2", "user3"), feed.after(new RankedFeed.Entry(5, "user0"), 5));
+        assertEquals(Arrays.asList("user0"), feed.after(new RankedFeed.Entry(9, "user1"), 1));
+    }
+
+    @Test
+    public void tailKeepsItsPlaceIfItsRankDoesNotDrop() {
+        RankedFeed feed = new RankedFeed(3);
+        feed.rebuild(entries(9, 5, 1, 0), false);
+
+        assertTrue(feed.update("user2", 1));
+        assertTrue(feed.update("user2", 2));
+        assertEquals(Arrays.asList("user0", "user1", "user2"), feed.page(0, 3));
+        assertFalse(feed.update("user2", 0));
+        assertEquals(2, feed.size());
+    }
+}
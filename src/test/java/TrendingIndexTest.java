@@ -0,0 +1,85 @@
+import com.musicmindproject.backend.logic.ranking.TrendingIndex;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrendingIndexTest {
+    private static final long NOW = System.currentTimeMillis();
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void recentEventsOutrankOldOnes() {
+        TrendingIndex index = new TrendingIndex();
+        // three plays two half-lives ago are worth 0.75 plays now
+        for (int i = 0; i < 3; i++)
+            index.record("old", TrendingIndex.PLAY_WEIGHT, NOW - 2 * DAY);
+        index.record("new", TrendingIndex.PLAY_WEIGHT, NOW);
+
+        assertEquals(Arrays.asList("new", "old"), index.page(0, 2));
+        assertEquals(0.75, index.getScore("old"), 0.01);
+    }
+
+    @Test
+    public void scoresAddUp() {
+        TrendingIndex index = new TrendingIndex();
+        index.record("a", TrendingIndex.PLAY_WEIGHT, NOW);
+        index.record("a", TrendingIndex.PLAY_WEIGHT, NOW);
+        index.record("b", 1.5, NOW);
+
+        assertEquals(Arrays.asList("a", "b"), index.page(0, 2));
+        assertEquals(2, index.getScore("a"), 0.01);
+        assertEquals(Arrays.asList("b"), index.page(1, 5));
+    }
+
+    @Test
+    public void oldEpochDoesNotOverflow() {
+        TrendingIndex index = new TrendingIndex();
+        index.record("future", TrendingIndex.PLAY_WEIGHT, NOW + 3650 * DAY);
+        index.record("future", TrendingIndex.PLAY_WEIGHT, NOW + 3650 * DAY);
+        assertEquals(1, index.size());
+        assertEquals(Arrays.asList("future"), index.page(0, 1));
+    }
+
+    @Test
+    public void pagesContinueAfterTheCursor() {
+        TrendingIndex index = new TrendingIndex();
+        index.record("a", 3, NOW);
+        index.record("b", 2, NOW);
+        index.record("c", 1, NOW);
+
+        assertEquals(Arrays.asList("b", "c"), index.after(index.getRankingScore("a"), "a", 5));
+        index.record("c", 5, NOW); // moving ahead of the cursor doesn't shift the next page
+        assertEquals(Arrays.asList("b"), index.after(index.getRankingScore("a"), "a", 5));
+    }
+
+    @Test
+    public void restoredScoresKeepTheirRank() {
+        TrendingIndex index = new TrendingIndex();
+        index.record("a", 2, NOW);
+        index.record("b", 1, NOW);
+        double score = index.getRankingScore("a");
+
+        TrendingIndex restarted = new TrendingIndex();
+        restarted.restore("a", score);
+        restarted.record("b", 1, NOW);
+        assertEquals(Arrays.asList("a", "b"), restarted.page(0, 2));
+        assertEquals(score, restarted.getRankingScore("a"), 1e-9);
+    }
+
+    @Test
+    public void resetRemovesTheScore() {
+        TrendingIndex index = new TrendingIndex();
+        index.record("a", 5, NOW);
+        index.record("b", 1, NOW);
+        index.reset("a");
+
+        assertEquals(Arrays.asList("b"), index.page(0, 2));
+        assertTrue(Double.isNaN(index.getRankingScore("a")));
+        index.record("a", 1, NOW + 1);
+        assertEquals(1, index.getScore("a"), 0.01);
+    }
+}